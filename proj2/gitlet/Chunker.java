@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Content-defined chunking of large blobs, after FastCDC.
+ *
+ *  A gear hash is slid over the contents: each byte shifts the hash left
+ *  one bit and adds a fixed random number for that byte's value, so the
+ *  high bits of the hash depend on roughly the last 64 bytes.  A chunk
+ *  ends where those high bits are all zero.  Because the cut points depend
+ *  only on nearby contents, inserting or changing bytes in one place moves
+ *  the cut points near the change and leaves the others where they were,
+ *  so the chunks away from the change are the same as before.
+ *
+ *  As in FastCDC, the first MIN_SIZE bytes of a chunk are not hashed at
+ *  all; up to AVG_SIZE a cut needs more zero bits (MASK_SMALL), and past
+ *  it fewer (MASK_LARGE), which keeps chunk sizes close to AVG_SIZE; and a
+ *  chunk is cut at MAX_SIZE whatever the hash.
+ *
+ *  A Chunker reads its input through a buffer of BUFFER_SIZE bytes and
+ *  returns one chunk at a time, so a file of any size is chunked in a
+ *  fixed amount of memory.  A cut depends only on the next MAX_SIZE bytes,
+ *  and the buffer holds at least that many until the input runs out, so
+ *  the cuts are the same however the input arrives.
+ */
+class Chunker {
+
+    /** Smallest chunk, other than the last one. */
+    static final int MIN_SIZE = 16 << 10;
+    /** Chunk size aimed at. */
+    static final int AVG_SIZE = 64 << 10;
+    /** Largest chunk. */
+    static final int MAX_SIZE = 256 << 10;
+    /** Bits of the hash that must be zero for a cut before AVG_SIZE. */
+    private static final long MASK_SMALL = -1L << (64 - 18);
+    /** Bits of the hash that must be zero for a cut after AVG_SIZE. */
+    private static final long MASK_LARGE = -1L << (64 - 14);
+    /** Random number added to the hash for each byte value.  The seed is
+     *  fixed, since changing the table would move every cut point. */
+    private static final long[] GEAR = new long[256];
+    /** Size of the buffer input is read through. */
+    private static final int BUFFER_SIZE = 4 * MAX_SIZE;
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** The input being chunked. */
+    private final ReadableByteChannel in;
+    /** Input read but not yet returned is buffer[start .. end-1]. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    /** Start of the unreturned input in buffer. */
+    private int start;
+    /** End of the input read into buffer. */
+    private int end;
+    /** True iff all of the input has been read. */
+    private boolean atEnd;
+
+    /** A Chunker that cuts the bytes read from IN into chunks. */
+    Chunker(ReadableByteChannel in) {
+        this.in = in;
+    }
+
+    /** Returns the next chunk of my input, or null if there are no more.
+     *  Every chunk is at most MAX_SIZE bytes long, and only the last is
+     *  shorter than MIN_SIZE. */
+    byte[] next() throws IOException {
+        if (!atEnd && end - start < MAX_SIZE) {
+            fill();
+        }
+        if (start == end) {
+            return null;
+        }
+        int cut = cut(buffer, start, end);
+        byte[] result = Arrays.copyOfRange(buffer, start, cut);
+        start = cut;
+        return result;
+    }
+
+    /** Move the unread bytes to the front of the buffer and read input
+     *  until it is full or the input runs out. */
+    private void fill() throws IOException {
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        start = 0;
+        ByteBuffer free = ByteBuffer.wrap(buffer, end, buffer.length - end);
+        while (free.hasRemaining()) {
+            if (in.read(free) < 0) {
+                atEnd = true;
+                break;
+            }
+        }
+        end = free.position();
+    }
+
+    /** Returns the end of the chunk of CONTENTS that starts at START,
+     *  given that the contents end at END, or else go on for at least
+     *  MAX_SIZE bytes past START. */
+    private static int cut(byte[] contents, int start, int end) {
+        int size = Math.min(end - start, MAX_SIZE);
+        if (size <= MIN_SIZE) {
+            return start + size;
+        }
+        int normal = Math.min(size, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[contents[start + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return start + i + 1;
+            }
+        }
+        for (; i < size; i += 1) {
+            hash = (hash << 1) + GEAR[contents[start + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return start + i + 1;
+            }
+        }
+        return start + size;
+    }
+}
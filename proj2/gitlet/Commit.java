@@ -1,26 +1,218 @@
 package gitlet;
 
-// TODO: any imports you need here
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
-import java.util.Date; // TODO: You'll likely use this in this class
+import static gitlet.Utils.*;
 
 /** Represents a gitlet commit object.
- *  TODO: It's a good idea to give a description here of what else this Class
- *  does at a high level.
+ *  A commit records a snapshot of the tracked files, as the id of the Tree
+ *  of the working directory, together with its log message, its timestamp,
+ *  and the ids of its parents.  Commits are immutable and are kept in the
+ *  ObjectStore in the form produced by CommitCodec, under the SHA-1 hash
+ *  of that form tagged with its type (see ObjectStore.write), which is
+ *  therefore also their commit id.  Commits made
+ *  before trees existed hold a flat map from file path to blob id instead;
+ *  their tree is built from that map when it is first asked for.
  *
  *  @author TODO
  */
-public class Commit {
-    /**
-     * TODO: add instance variables here.
-     *
-     * List all instance variables of the Commit class here with a useful
-     * comment above them describing what that variable represents and how that
-     * variable is used. We've provided one example for `message`.
-     */
+public class Commit implements Dumpable {
+
+    /** Number of bytes read when loading a commit, which holds the whole
+     *  of all but very long log messages. */
+    private static final int HEADER_READ = 512;
+    /** Format of the date line of a log entry, in the local time zone. */
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("'Date: 'EEE MMM d HH:mm:ss yyyy Z",
+                                    Locale.US)
+        .withZone(ZoneId.systemDefault());
+    /** Limit on the total estimated size of the commits in CACHE. */
+    private static final long CACHE_LIMIT = 16L << 20;
+    /** Commits read or written during this command. */
+    static final ObjectCache<Commit> CACHE =
+        new ObjectCache<>(CACHE_LIMIT, Commit::estimatedSize);
 
     /** The message of this Commit. */
-    private String message;
+    private final String message;
+    /** The time of this Commit, in milliseconds since the epoch. */
+    private final long timestamp;
+    /** The id of the first parent, or null for the initial commit. */
+    private final String parent;
+    /** The id of the second parent of a merge commit, or null. */
+    private final String mergeParent;
+    /** Map from tracked file path to blob id, or null if not yet
+     *  loaded. */
+    private TreeMap<String, String> blobs;
+    /** The id of my root tree, or null if not yet known. */
+    private String tree;
+    /** My id, if I was loaded without my file table, or null. */
+    private final String id;
+
+    /** A commit with the given MESSAGE, TIMESTAMP, PARENT, MERGEPARENT and
+     *  tracked files BLOBS, a map from path to blob id.  The commit takes
+     *  ownership of BLOBS, which must not be modified afterwards. */
+    Commit(String message, long timestamp, String parent, String mergeParent,
+           TreeMap<String, String> blobs) {
+        this.message = message;
+        this.timestamp = timestamp;
+        this.parent = parent;
+        this.mergeParent = mergeParent;
+        this.blobs = blobs;
+        this.tree = null;
+        this.id = null;
+    }
+
+    /** A commit with the given MESSAGE, TIMESTAMP, PARENT and MERGEPARENT
+     *  whose tracked files are those of the stored tree with id TREE. */
+    Commit(String message, long timestamp, String parent, String mergeParent,
+           String tree) {
+        this(null, message, timestamp, parent, mergeParent, tree);
+    }
+
+    /** The stored commit with id ID, whose MESSAGE, TIMESTAMP, PARENT,
+     *  MERGEPARENT and root TREE are given.  If TREE is null, the file
+     *  table is loaded from the object store when first needed. */
+    Commit(String id, String message, long timestamp, String parent,
+           String mergeParent, String tree) {
+        this.message = message;
+        this.timestamp = timestamp;
+        this.parent = parent;
+        this.mergeParent = mergeParent;
+        this.blobs = null;
+        this.tree = tree;
+        this.id = id;
+    }
+
+    /** Returns the initial commit of every repository, storing its empty
+     *  tree. */
+    static Commit initial() {
+        return new Commit("initial commit", 0, null, null,
+                          Tree.write(new TreeMap<>()));
+    }
+
+    /** Returns the commit with id ID, or null if there is none.  Only the
+     *  start of the stored commit is read; its file table is read when
+     *  first needed, so walking history costs no more for commits that
+     *  track many files. */
+    static Commit load(String id) {
+        Commit result = CACHE.get(id);
+        if (result != null) {
+            return result;
+        }
+        byte[] header =
+            ObjectStore.readPrefix(id, ObjectStore.COMMIT, HEADER_READ);
+        if (header == null) {
+            return null;
+        }
+        result = CommitCodec.decodeHeader(id, header);
+        if (result == null && header.length < HEADER_READ) {
+            throw error("Corrupt commit.");
+        } else if (result == null) {
+            result = CommitCodec.decode(ObjectStore.read(id,
+                                                         ObjectStore.COMMIT));
+        }
+        CACHE.put(id, result);
+        return result;
+    }
+
+    /** Store this commit and return its id. */
+    String save() {
+        String id =
+            ObjectStore.write(ObjectStore.COMMIT, CommitCodec.encode(this));
+        CACHE.put(id, this);
+        return id;
+    }
+
+    /** Returns my log message. */
+    String getMessage() {
+        return message;
+    }
+
+    /** Returns my timestamp in milliseconds since the epoch. */
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    /** Returns the id of my first parent, or null. */
+    String getParent() {
+        return parent;
+    }
+
+    /** Returns the id of my second parent, or null. */
+    String getMergeParent() {
+        return mergeParent;
+    }
+
+    /** Returns the map from tracked file paths to blob ids, flattened from
+     *  my tree.  The result must not be modified. */
+    Map<String, String> getBlobs() {
+        if (blobs == null) {
+            if (tree != null) {
+                blobs = Tree.files(tree);
+            } else {
+                byte[] contents = ObjectStore.read(id, ObjectStore.COMMIT);
+                if (contents == null) {
+                    throw error("Missing commit %s.", id);
+                }
+                blobs = CommitCodec.decodeTable(contents);
+            }
+            if (id != null) {
+                CACHE.put(id, this);
+            }
+        }
+        return blobs;
+    }
+
+    /** Returns the blob id of tracked file NAME, a path, or null if NAME
+     *  is not tracked.  Only the trees along NAME are read. */
+    String getBlob(String name) {
+        if (blobs == null && tree != null) {
+            return Tree.lookup(tree, name);
+        }
+        return getBlobs().get(name);
+    }
+
+    /** Returns the id of my root tree, first storing the tree of my file
+     *  table if I hold a table instead. */
+    String getTree() {
+        if (tree == null) {
+            tree = Tree.write(getBlobs());
+        }
+        return tree;
+    }
+
+    /** Returns true iff I hold the id of my root tree rather than a flat
+     *  file table. */
+    boolean hasTree() {
+        return tree != null;
+    }
+
+    /** Returns the "Date: ..." line of my log entry. */
+    String dateLine() {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(timestamp));
+    }
+
+    /** Returns a rough estimate of the memory I take, in bytes. */
+    private long estimatedSize() {
+        long result = 128 + 2L * message.length();
+        if (blobs != null) {
+            for (String name : blobs.keySet()) {
+                result += 160 + 2L * name.length();
+            }
+        }
+        return result;
+    }
 
-    /* TODO: fill in the rest of this class. */
+    @Override
+    public void dump() {
+        System.out.printf("message: %s%ntimestamp: %d%nparent: %s%n"
+                          + "merge parent: %s%nblobs: %s%n",
+                          message, timestamp, parent, mergeParent,
+                          getBlobs());
+    }
 }
@@ -0,0 +1,262 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** An append-only catalog of every commit made in a repository, which
+ *  global-log and find read instead of the commits themselves.
+ *
+ *  The file .gitlet/catalog is a header (magic, version) followed by one
+ *  fixed-width record per commit, in the order the commits were made:
+ *
+ *      20 bytes   raw commit id
+ *       8 bytes   timestamp in milliseconds since the epoch
+ *       8 bytes   offset of the message in .gitlet/catalog-messages
+ *       4 bytes   row of the commit in the commit graph
+ *
+ *  The messages themselves are appended to .gitlet/catalog-messages, each
+ *  as a varint length and its UTF-8 bytes.  Each message is written before
+ *  the record that points to it, so a crash can at worst leave a message
+ *  that nothing refers to.  Both files are memory-mapped and read front to
+ *  back.  Commits with a given message are found through a MessageIndex
+ *  of the words in the messages.
+ *
+ *  A repository made before the catalog existed has its catalog built,
+ *  once, from all the commits in its object store.
+ */
+class CommitCatalog {
+
+    /** File holding the records. */
+    static final File CATALOG_FILE = join(GITLET_DIR, "catalog");
+    /** File holding the messages. */
+    static final File MESSAGES_FILE = join(GITLET_DIR, "catalog-messages");
+    /** Magic number at the start of CATALOG_FILE. */
+    private static final int MAGIC = 0x474c4354;
+    /** Format version of CATALOG_FILE. */
+    private static final int VERSION = 1;
+    /** Size of the header of CATALOG_FILE. */
+    private static final int HEADER_SIZE = 8;
+    /** Size of one record. */
+    private static final int RECORD_SIZE = PackFile.ID_SIZE + 8 + 8 + 4;
+
+    /** The records, without the header. */
+    private ByteBuffer records;
+    /** The contents of MESSAGES_FILE. */
+    private ByteBuffer messages;
+    /** The number of records. */
+    private int count;
+    /** The index of message words, loaded on first use. */
+    private MessageIndex index;
+
+    /** A catalog holding the records in RECORDS, whose messages are in
+     *  MESSAGES. */
+    private CommitCatalog(ByteBuffer records, ByteBuffer messages) {
+        this.records = records;
+        this.messages = messages;
+        this.count = records.capacity() / RECORD_SIZE;
+    }
+
+    /** Write an empty catalog for a new repository and return it. */
+    static CommitCatalog create() {
+        writeContents(CATALOG_FILE, (Object) ByteBuffer.allocate(HEADER_SIZE)
+                      .putInt(MAGIC).putInt(VERSION).array());
+        writeContents(MESSAGES_FILE, (Object) new byte[0]);
+        return load();
+    }
+
+    /** Returns the saved catalog, first building it from the object store
+     *  if there is none.  A catalog that is to get a record for a new
+     *  commit must be loaded before that commit is stored. */
+    static CommitCatalog load() {
+        if (!CATALOG_FILE.isFile()) {
+            return rebuild();
+        }
+        return new CommitCatalog(mapRecords(), map(MESSAGES_FILE, 0));
+    }
+
+    /** Returns the number of commits in the catalog. */
+    int size() {
+        return count;
+    }
+
+    /** Returns the id of the commit in record K. */
+    String id(int k) {
+        return toHex(rawId(k), 0);
+    }
+
+    /** Returns the timestamp of the commit in record K. */
+    long timestamp(int k) {
+        return records.getLong(k * RECORD_SIZE + PackFile.ID_SIZE);
+    }
+
+    /** Returns the message of the commit in record K. */
+    String message(int k) {
+        int pos = k * RECORD_SIZE + PackFile.ID_SIZE + 8;
+        return readString(messages.duplicate()
+                          .position((int) records.getLong(pos)));
+    }
+
+    /** Returns the commit-graph row of the commit in record K. */
+    int graphRow(int k) {
+        return records.getInt(k * RECORD_SIZE + PackFile.ID_SIZE + 16);
+    }
+
+    /** Add a record for COMMIT, whose id is ID and whose row in the commit
+     *  graph is GRAPHROW, to the end of the catalog. */
+    void append(String id, Commit commit, int graphRow) {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        writeString(message, commit.getMessage());
+        long offset = MESSAGES_FILE.length();
+        writeAt(MESSAGES_FILE, offset, message.toByteArray());
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(fromHex(id)).putLong(commit.getTimestamp())
+            .putLong(offset).putInt(graphRow);
+        writeAt(CATALOG_FILE, HEADER_SIZE + (long) count * RECORD_SIZE,
+                record.array());
+        records = mapRecords();
+        messages = map(MESSAGES_FILE, 0);
+        count += 1;
+        index();
+    }
+
+    /** Returns the records of the commits whose message is exactly
+     *  MESSAGE, in increasing order.  Only records holding the rarest word
+     *  of MESSAGE, as told by the message index, are compared with it. */
+    List<Integer> find(String message) {
+        MessageIndex words = index();
+        List<Integer> result = new ArrayList<>();
+        long[] tokens = MessageIndex.tokens(message);
+        if (tokens.length == 0) {
+            for (int k = 0; k < words.covered(); k += 1) {
+                if (message(k).equals(message)) {
+                    result.add(k);
+                }
+            }
+        } else {
+            long rarest = tokens[0];
+            for (long token : tokens) {
+                if (words.count(token) < words.count(rarest)) {
+                    rarest = token;
+                }
+            }
+            for (int k : words.rows(rarest)) {
+                if (message(k).equals(message)) {
+                    result.add(k);
+                }
+            }
+        }
+        for (int k = words.covered(); k < count; k += 1) {
+            if (message(k).equals(message)) {
+                result.add(k);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the message index, loading it on first use and rebuilding
+     *  it if too many records are missing from it. */
+    private MessageIndex index() {
+        if (index == null) {
+            index = MessageIndex.load(count);
+        }
+        if (count - index.covered() > MessageIndex.MAX_UNINDEXED) {
+            index = MessageIndex.rebuild(this, index);
+        }
+        return index;
+    }
+
+    /** Returns the raw id of the commit in record K. */
+    private byte[] rawId(int k) {
+        byte[] result = new byte[PackFile.ID_SIZE];
+        records.get(k * RECORD_SIZE, result);
+        return result;
+    }
+
+    /** Write a new catalog holding every commit in the object store, in
+     *  order of timestamp, and return it.  The catalog file is written
+     *  under a temporary name and renamed into place last, so an
+     *  interrupted rebuild is simply done again. */
+    private static CommitCatalog rebuild() {
+        CommitGraph graph = CommitGraph.load();
+        List<String> ids = new ArrayList<>(ObjectStore.commitIds());
+        ids.sort(Comparator.comparingLong(
+            (String id) -> Commit.load(id).getTimestamp())
+                 .thenComparing(id -> id));
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        ByteBuffer catalog =
+            ByteBuffer.allocate(HEADER_SIZE + ids.size() * RECORD_SIZE);
+        catalog.putInt(MAGIC).putInt(VERSION);
+        for (String id : ids) {
+            Commit commit = Commit.load(id);
+            int row = graph.append(id, commit);
+            catalog.put(fromHex(id)).putLong(commit.getTimestamp())
+                .putLong(text.size()).putInt(row);
+            writeString(text, commit.getMessage());
+        }
+        writeContents(MESSAGES_FILE, (Object) text.toByteArray());
+        File tmp = join(GITLET_DIR, "catalog.tmp");
+        writeContents(tmp, (Object) catalog.array());
+        try {
+            Files.move(tmp.toPath(), CATALOG_FILE.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Cannot write commit catalog: %s",
+                        excp.getMessage());
+        }
+        return new CommitCatalog(mapRecords(), map(MESSAGES_FILE, 0));
+    }
+
+    /** Returns the records in CATALOG_FILE, mapped into memory. */
+    private static ByteBuffer mapRecords() {
+        ByteBuffer header = map(CATALOG_FILE, 0);
+        if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC
+            || header.getInt(4) != VERSION) {
+            throw error("Corrupt commit catalog.");
+        }
+        ByteBuffer result = map(CATALOG_FILE, HEADER_SIZE);
+        return result.limit(result.limit() - result.limit() % RECORD_SIZE)
+            .slice();
+    }
+
+    /** Returns the contents of FILE from offset START on, mapped into
+     *  memory, or an empty buffer if FILE does not exist. */
+    private static ByteBuffer map(File file, long start) {
+        if (!file.isFile()) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel chan = FileChannel.open(file.toPath())) {
+            return chan.map(FileChannel.MapMode.READ_ONLY, start,
+                            Math.max(0, chan.size() - start));
+        } catch (IOException excp) {
+            throw error("Cannot read commit catalog: %s", excp.getMessage());
+        }
+    }
+
+    /** Write DATA to FILE at POSITION, creating FILE if needed. */
+    private static void writeAt(File file, long position, byte[] data) {
+        try (FileChannel out =
+                 FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                position += out.write(buf, position);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write commit catalog: %s",
+                        excp.getMessage());
+        }
+    }
+}
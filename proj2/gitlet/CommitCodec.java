@@ -0,0 +1,158 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** The stored form of a Commit.
+ *
+ *  A commit is encoded as
+ *
+ *      1 byte      format VERSION
+ *      1 byte      number of parents, P (0, 1 or 2)
+ *      P * 20      raw ids of the parents, first parent first
+ *      20 bytes    raw id of the root tree
+ *      varint      timestamp in milliseconds since the epoch
+ *      varint      length of the message in UTF-8, then the message
+ *
+ *  Commits written before trees existed have format FLAT_VERSION, which
+ *  has no tree id and instead ends with the whole file table:
+ *
+ *      varint      number of tracked files, N
+ *      N entries   in increasing order of file name, each the varint
+ *                  length of the UTF-8 file name, the name, and the
+ *                  raw 20-byte id of its blob
+ *
+ *  Both are read, and a commit holding a flat table rather than a tree is
+ *  still written in the flat format.
+ *
+ *  Unlike Java serialization, this carries no class descriptors, so a
+ *  commit costs little more than its message and file table, and decoding
+ *  is a single pass over the bytes.  The encoding of a commit is unique,
+ *  so its SHA-1 hash is still a fine commit id.  Since the file table
+ *  comes last, the rest of a commit can be decoded from a short prefix of
+ *  its encoding (see decodeHeader).
+ */
+class CommitCodec {
+
+    /** Version of the format that holds a tree id. */
+    static final int VERSION = 2;
+    /** Version of the format that holds a flat file table. */
+    static final int FLAT_VERSION = 1;
+
+    /** Returns the encoding of COMMIT. */
+    static byte[] encode(Commit commit) {
+        boolean flat = !commit.hasTree();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+            flat ? 64 + 48 * commit.getBlobs().size() : 64);
+        out.write(flat ? FLAT_VERSION : VERSION);
+        if (commit.getParent() == null) {
+            out.write(0);
+        } else if (commit.getMergeParent() == null) {
+            out.write(1);
+            out.writeBytes(fromHex(commit.getParent()));
+        } else {
+            out.write(2);
+            out.writeBytes(fromHex(commit.getParent()));
+            out.writeBytes(fromHex(commit.getMergeParent()));
+        }
+        if (!flat) {
+            out.writeBytes(fromHex(commit.getTree()));
+        }
+        writeVarint(out, commit.getTimestamp());
+        writeString(out, commit.getMessage());
+        if (!flat) {
+            return out.toByteArray();
+        }
+        writeVarint(out, commit.getBlobs().size());
+        for (Map.Entry<String, String> entry : commit.getBlobs().entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeBytes(fromHex(entry.getValue()));
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the commit whose encoding is BYTES.  Throws a
+     *  GitletException if BYTES is not a valid encoding. */
+    static Commit decode(byte[] bytes) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            Commit header = readHeader(in, null);
+            if (header.hasTree()) {
+                return header;
+            }
+            return new Commit(header.getMessage(), header.getTimestamp(),
+                              header.getParent(), header.getMergeParent(),
+                              readTable(in));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | IllegalArgumentException excp) {
+            throw error("Corrupt commit.");
+        }
+    }
+
+    /** Returns the commit with id ID whose encoding starts with BYTES,
+     *  decoding only its parents, tree, timestamp and message.  The file
+     *  table of a flat commit is decoded from the stored commit when it
+     *  is first needed.  Returns null if BYTES ends before the message
+     *  does. */
+    static Commit decodeHeader(String id, byte[] bytes) {
+        try {
+            return readHeader(ByteBuffer.wrap(bytes), id);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the file table of the commit whose encoding is BYTES, which
+     *  must be in the flat format.  Throws a GitletException if BYTES is
+     *  not a valid encoding. */
+    static TreeMap<String, String> decodeTable(byte[] bytes) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            readHeader(in, null);
+            return readTable(in);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | IllegalArgumentException excp) {
+            throw error("Corrupt commit.");
+        }
+    }
+
+    /** Read the fields of a commit up to its file table, if it has one,
+     *  from IN and return them as a commit with id ID whose file table is
+     *  not yet loaded. */
+    private static Commit readHeader(ByteBuffer in, String id) {
+        int version = in.get();
+        if (version != VERSION && version != FLAT_VERSION) {
+            throw error("Unknown commit format.");
+        }
+        int numParents = in.get();
+        String parent = numParents > 0 ? readId(in) : null;
+        String mergeParent = numParents > 1 ? readId(in) : null;
+        String tree = version == VERSION ? readId(in) : null;
+        long timestamp = readVarint(in);
+        String message = readString(in);
+        return new Commit(id, message, timestamp, parent, mergeParent, tree);
+    }
+
+    /** Read a file table from IN and return it. */
+    private static TreeMap<String, String> readTable(ByteBuffer in) {
+        TreeMap<String, String> blobs = new TreeMap<>();
+        for (long n = readVarint(in); n > 0; n -= 1) {
+            String name = readString(in);
+            blobs.put(name, readId(in));
+        }
+        return blobs;
+    }
+
+    /** Read a raw 20-byte id from IN and return it as a UID. */
+    private static String readId(ByteBuffer in) {
+        String result = toHex(in.array(), in.arrayOffset() + in.position());
+        in.position(in.position() + PackFile.ID_SIZE);
+        return result;
+    }
+}
@@ -0,0 +1,415 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** The commit graph: the parents, generation number and timestamp of every
+ *  commit, in a side file that can be searched without reading any commit
+ *  object.
+ *
+ *  The file .gitlet/commit-graph is a header (magic, version) followed by
+ *  one fixed-width row per commit:
+ *
+ *      20 bytes   raw commit id
+ *       4 bytes   row number of the first parent, or -1
+ *       4 bytes   row number of the second parent, or -1
+ *       4 bytes   generation number
+ *       8 bytes   timestamp in milliseconds since the epoch
+ *
+ *  A commit's row always follows those of its parents, so the file grows by
+ *  appending one row per new commit.  The generation number of a commit is
+ *  one more than the largest generation of its parents (1 for the initial
+ *  commit), so an ancestor of a commit always has a smaller generation.
+ *  Searches for ancestors can therefore visit commits in decreasing order of
+ *  generation and stop as soon as the generations they still have to visit
+ *  are too small to matter.
+ *
+ *  The file is memory-mapped rather than read, and commits are found by id
+ *  through a CommitIndex, so loading the graph and looking up a commit cost
+ *  the same however many commits there are.
+ */
+class CommitGraph {
+
+    /** File holding the graph. */
+    static final File GRAPH_FILE = join(GITLET_DIR, "commit-graph");
+    /** Magic number at the start of GRAPH_FILE. */
+    private static final int MAGIC = 0x474c4347;
+    /** Format version of GRAPH_FILE. */
+    private static final int VERSION = 1;
+    /** Size of the header of GRAPH_FILE. */
+    private static final int HEADER_SIZE = 8;
+    /** Size of one row. */
+    private static final int ROW_SIZE = PackFile.ID_SIZE + 4 + 4 + 4 + 8;
+    /** Row number standing for "no parent". */
+    static final int NONE = -1;
+
+    /** Flag marking a commit reached from the first commit of a search. */
+    private static final int FROM_A = 1;
+    /** Flag marking a commit reached from the second commit of a search. */
+    private static final int FROM_B = 2;
+
+    /** The rows of the graph, without the header. */
+    private ByteBuffer rows;
+    /** The number of rows. */
+    private int count;
+    /** The index of commit ids, loaded on first use. */
+    private CommitIndex index;
+
+    /** A graph holding the rows in ROWS. */
+    private CommitGraph(ByteBuffer rows) {
+        this.rows = rows;
+        this.count = rows.capacity() / ROW_SIZE;
+    }
+
+    /** Returns the saved graph, or an empty one if there is none. */
+    static CommitGraph load() {
+        if (!GRAPH_FILE.isFile()) {
+            return new CommitGraph(ByteBuffer.allocate(0));
+        }
+        return new CommitGraph(mapRows());
+    }
+
+    /** Returns the row number of the commit with id ID, adding rows for it
+     *  and any missing ancestors first if it is not in the graph. */
+    int row(String id) {
+        int result = find(fromHex(id));
+        if (result != NONE) {
+            return result;
+        }
+        Commit commit = Commit.load(id);
+        if (commit == null) {
+            throw error("No commit with that id exists.");
+        }
+        return append(id, commit);
+    }
+
+    /** Returns true iff the commit with id ID is in the graph. */
+    boolean contains(String id) {
+        return find(fromHex(id)) != NONE;
+    }
+
+    /** Returns the full id of the only commit in the graph whose id starts
+     *  with PREFIX, or null if there is none.  Throws a GitletException if
+     *  there are several. */
+    String resolve(String prefix) {
+        prefix = prefix.toLowerCase();
+        if (prefix.isEmpty() || prefix.length() > UID_LENGTH
+            || !prefix.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            return null;
+        }
+        List<Integer> found = new ArrayList<>(2);
+        index().findPrefix(prefix, found, 2);
+        for (int k = index().size(); k < count && found.size() < 2; k += 1) {
+            if (id(k).startsWith(prefix)) {
+                found.add(k);
+            }
+        }
+        if (found.size() > 1) {
+            throw error("More than one commit has an id starting with %s.",
+                        prefix);
+        }
+        return found.isEmpty() ? null : id(found.get(0));
+    }
+
+    /** Add a row for COMMIT, whose id is ID, to the graph and to its file,
+     *  unless it is already there, and return its row number.  Rows for
+     *  any missing ancestors of COMMIT are added first.  They are found
+     *  with an explicit stack rather than by recursion, so a graph can be
+     *  rebuilt however long the history is. */
+    int append(String id, Commit commit) {
+        int existing = find(fromHex(id));
+        if (existing != NONE) {
+            return existing;
+        }
+        ArrayDeque<String> ids = new ArrayDeque<>();
+        ArrayDeque<Commit> commits = new ArrayDeque<>();
+        ids.push(id);
+        commits.push(commit);
+        while (!ids.isEmpty()) {
+            Commit top = commits.peek();
+            String missing = missingParent(top);
+            if (missing != null) {
+                Commit parent = Commit.load(missing);
+                if (parent == null) {
+                    throw error("No commit with that id exists.");
+                }
+                ids.push(missing);
+                commits.push(parent);
+            } else {
+                appendRow(ids.pop(), commits.pop());
+            }
+        }
+        return count - 1;
+    }
+
+    /** Returns the id of a parent of COMMIT that is not in the graph, or
+     *  null if all its parents are. */
+    private String missingParent(Commit commit) {
+        String parent = commit.getParent();
+        if (parent != null && find(fromHex(parent)) == NONE) {
+            return parent;
+        }
+        String mergeParent = commit.getMergeParent();
+        if (mergeParent != null && find(fromHex(mergeParent)) == NONE) {
+            return mergeParent;
+        }
+        return null;
+    }
+
+    /** Add a row for COMMIT, whose id is ID and whose parents are all in
+     *  the graph, to the graph and to its file. */
+    private void appendRow(String id, Commit commit) {
+        if (find(fromHex(id)) != NONE) {
+            return;
+        }
+        int parent = commit.getParent() == null
+            ? NONE : find(fromHex(commit.getParent()));
+        int mergeParent = commit.getMergeParent() == null
+            ? NONE : find(fromHex(commit.getMergeParent()));
+        int generation = 1 + Math.max(parent == NONE ? 0 : generation(parent),
+                                      mergeParent == NONE
+                                      ? 0 : generation(mergeParent));
+        ByteBuffer row = ByteBuffer.allocate(ROW_SIZE);
+        row.put(fromHex(id)).putInt(parent).putInt(mergeParent)
+            .putInt(generation).putLong(commit.getTimestamp()).flip();
+        writeRow(row);
+        rows = mapRows();
+        count += 1;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return count;
+    }
+
+    /** Returns the id of the commit in row K. */
+    String id(int k) {
+        return toHex(rawId(k), 0);
+    }
+
+    /** Returns the raw id of the commit in row K. */
+    byte[] rawId(int k) {
+        byte[] result = new byte[PackFile.ID_SIZE];
+        rows.get(k * ROW_SIZE, result);
+        return result;
+    }
+
+    /** Returns the row of the first parent of row K, or NONE. */
+    int parent(int k) {
+        return rows.getInt(k * ROW_SIZE + PackFile.ID_SIZE);
+    }
+
+    /** Returns the row of the second parent of row K, or NONE. */
+    int mergeParent(int k) {
+        return rows.getInt(k * ROW_SIZE + PackFile.ID_SIZE + 4);
+    }
+
+    /** Returns the generation number of row K. */
+    int generation(int k) {
+        return rows.getInt(k * ROW_SIZE + PackFile.ID_SIZE + 8);
+    }
+
+    /** Returns the timestamp of row K. */
+    long timestamp(int k) {
+        return rows.getLong(k * ROW_SIZE + PackFile.ID_SIZE + 12);
+    }
+
+    /** Returns true iff the commit with id ANCESTOR is the commit with id
+     *  DESCENDANT or one of its ancestors. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int target = row(ancestor);
+        int start = row(descendant);
+        int floor = generation(target);
+        boolean[] seen = new boolean[count];
+        PriorityQueue<Integer> queue = byGeneration();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int k = queue.remove();
+            if (k == target) {
+                return true;
+            }
+            if (seen[k] || generation(k) <= floor) {
+                continue;
+            }
+            seen[k] = true;
+            for (int p : new int[] { parent(k), mergeParent(k) }) {
+                if (p != NONE && !seen[p]) {
+                    queue.add(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the id of a latest common ancestor of the commits with ids
+     *  A and B: a common ancestor that is not an ancestor of any other
+     *  common ancestor.  Of several such, returns the one with the largest
+     *  generation number.  Commits are visited in decreasing order of
+     *  generation, so every descendant of a commit that the search reaches
+     *  has passed on its flags before the commit itself is visited, and the
+     *  first commit found to be reachable from both A and B is the
+     *  answer. */
+    String mergeBase(String a, String b) {
+        int rowA = row(a), rowB = row(b);
+        int[] flags = new int[count];
+        PriorityQueue<Integer> queue = byGeneration();
+        flags[rowA] |= FROM_A;
+        flags[rowB] |= FROM_B;
+        queue.add(rowA);
+        queue.add(rowB);
+        while (!queue.isEmpty()) {
+            int k = queue.remove();
+            if (flags[k] == (FROM_A | FROM_B)) {
+                return id(k);
+            }
+            for (int p : new int[] { parent(k), mergeParent(k) }) {
+                if (p != NONE && (flags[p] | flags[k]) != flags[p]) {
+                    flags[p] |= flags[k];
+                    queue.add(p);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the rows of the commits that are row WANT or its ancestors
+     *  but are neither any of the rows HAVES nor their ancestors, parents
+     *  before children: the commits a repository that has HAVES lacks of
+     *  the history of WANT.  As in mergeBase, commits are visited in
+     *  decreasing order of generation, so each has all its flags when it
+     *  is visited, and the search stops as soon as every commit still to
+     *  be visited is reachable from HAVES. */
+    List<Integer> missing(int want, Collection<Integer> haves) {
+        int[] flags = new int[count];
+        PriorityQueue<Integer> queue = byGeneration();
+        for (int k : haves) {
+            if (flags[k] == 0) {
+                queue.add(k);
+            }
+            flags[k] = FROM_B;
+        }
+        int pending = 0;
+        if (flags[want] == 0) {
+            flags[want] = FROM_A;
+            queue.add(want);
+            pending = 1;
+        }
+        List<Integer> result = new ArrayList<>();
+        while (pending > 0) {
+            int k = queue.remove();
+            if (flags[k] == FROM_A) {
+                pending -= 1;
+                result.add(k);
+            }
+            for (int p : new int[] { parent(k), mergeParent(k) }) {
+                if (p == NONE || (flags[p] | flags[k]) == flags[p]) {
+                    continue;
+                }
+                if (flags[p] == 0) {
+                    queue.add(p);
+                } else if (flags[p] == FROM_A) {
+                    pending -= 1;
+                }
+                flags[p] |= flags[k];
+                if (flags[p] == FROM_A) {
+                    pending += 1;
+                }
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /** Returns an empty queue of row numbers that yields rows of larger
+     *  generation first, breaking ties in favor of later rows. */
+    PriorityQueue<Integer> byGeneration() {
+        return new PriorityQueue<>((x, y) -> {
+            int c = Integer.compare(generation(y), generation(x));
+            return c != 0 ? c : Integer.compare(y, x);
+        });
+    }
+
+    /** Returns the row of the commit whose raw id is RAWID, or NONE if it
+     *  is not in the graph. */
+    private int find(byte[] rawId) {
+        int result = index().find(rawId);
+        byte[] raw = new byte[PackFile.ID_SIZE];
+        for (int k = index().size(); result == NONE && k < count; k += 1) {
+            rows.get(k * ROW_SIZE, raw);
+            if (Arrays.equals(raw, rawId)) {
+                result = k;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the index of commit ids, loading it on first use and
+     *  rebuilding it if too many rows are missing from it. */
+    private CommitIndex index() {
+        if (index == null) {
+            index = CommitIndex.load(count);
+        }
+        if (count - index.size() > CommitIndex.MAX_UNINDEXED) {
+            index = CommitIndex.rebuild(this, index);
+        }
+        return index;
+    }
+
+    /** Returns the rows in GRAPH_FILE, mapped into memory. */
+    private static ByteBuffer mapRows() {
+        try (FileChannel chan = FileChannel.open(GRAPH_FILE.toPath())) {
+            long size = chan.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            chan.read(header, 0);
+            if (size < HEADER_SIZE || header.getInt(0) != MAGIC
+                || header.getInt(4) != VERSION) {
+                throw error("Corrupt commit graph.");
+            }
+            long length = size - HEADER_SIZE;
+            return chan.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                            length - length % ROW_SIZE);
+        } catch (IOException excp) {
+            throw error("Cannot read commit graph: %s", excp.getMessage());
+        }
+    }
+
+    /** Append ROW to the graph file, writing the header first if the file
+     *  is new.  A new file means any commit index refers to the rows of an
+     *  older graph, so it is deleted. */
+    private void writeRow(ByteBuffer row) {
+        try (FileChannel out =
+                 FileChannel.open(GRAPH_FILE.toPath(),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE)) {
+            long end = out.size();
+            if (end == 0) {
+                CommitIndex.INDEX_FILE.delete();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) {
+                    end += out.write(header, end);
+                }
+            }
+            end = HEADER_SIZE + (long) count * ROW_SIZE;
+            ByteBuffer data = row.duplicate();
+            while (data.hasRemaining()) {
+                end += out.write(data, end);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write commit graph: %s", excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** A sorted index from commit ids to rows of the commit graph.
+ *
+ *  The file .gitlet/commit-index is a header (magic, version, number of
+ *  entries N), a fan-out table of 256 ints, and N fixed-width entries
+ *  sorted by raw commit id:
+ *
+ *      20 bytes   raw commit id
+ *       4 bytes   row of the commit in the commit graph
+ *
+ *  Entry k of the fan-out table is the number of entries whose ids start
+ *  with a byte no greater than k, so the entries for ids starting with a
+ *  given byte are found without a search, and a lookup is a binary search
+ *  over about N/256 entries of the memory-mapped file.  Nothing is read
+ *  into memory when the index is loaded.
+ *
+ *  The index covers the first N rows of the commit graph.  Rows added
+ *  since (at most MAX_UNINDEXED of them) are searched linearly by
+ *  CommitGraph; once there are more, the index is rebuilt by merging the
+ *  new rows into it, written to a temporary file and renamed into place.
+ */
+class CommitIndex {
+
+    /** File holding the index. */
+    static final File INDEX_FILE = join(GITLET_DIR, "commit-index");
+    /** Most rows of the commit graph that may be missing from the
+     *  index. */
+    static final int MAX_UNINDEXED = 1024;
+    /** Magic number at the start of INDEX_FILE. */
+    private static final int MAGIC = 0x474c4349;
+    /** Format version of INDEX_FILE. */
+    private static final int VERSION = 1;
+    /** Size of the header of INDEX_FILE. */
+    private static final int HEADER_SIZE = 12;
+    /** Number of entries in the fan-out table. */
+    private static final int FANOUT = 256;
+    /** Position of the first entry in INDEX_FILE. */
+    private static final int ENTRIES = HEADER_SIZE + 4 * FANOUT;
+    /** Size of one entry. */
+    private static final int ENTRY_SIZE = PackFile.ID_SIZE + 4;
+
+    /** The mapped contents of the index file, or null if it is empty. */
+    private final ByteBuffer index;
+    /** The number of entries. */
+    private final int count;
+
+    /** An index whose mapped contents are INDEX, holding COUNT entries. */
+    private CommitIndex(ByteBuffer index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+
+    /** Returns the saved index, or an empty one if there is none or if it
+     *  covers more than the GRAPHSIZE rows of the commit graph. */
+    static CommitIndex load(int graphSize) {
+        if (!INDEX_FILE.isFile()) {
+            return new CommitIndex(null, 0);
+        }
+        MappedByteBuffer index;
+        try (FileChannel chan = FileChannel.open(INDEX_FILE.toPath())) {
+            index = chan.map(FileChannel.MapMode.READ_ONLY, 0, chan.size());
+        } catch (IOException excp) {
+            throw error("Cannot read commit index: %s", excp.getMessage());
+        }
+        if (index.limit() < ENTRIES || index.getInt(0) != MAGIC
+            || index.getInt(4) != VERSION
+            || index.limit() < ENTRIES + index.getInt(8) * ENTRY_SIZE) {
+            throw error("Corrupt commit index.");
+        }
+        int count = index.getInt(8);
+        if (count > graphSize) {
+            return new CommitIndex(null, 0);
+        }
+        return new CommitIndex(index, count);
+    }
+
+    /** Returns the number of commits in this index, which are those in
+     *  the first size() rows of the commit graph. */
+    int size() {
+        return count;
+    }
+
+    /** Returns the graph row of the commit whose raw id is RAWID, or
+     *  CommitGraph.NONE if it is not in this index. */
+    int find(byte[] rawId) {
+        if (count == 0) {
+            return CommitGraph.NONE;
+        }
+        int b = rawId[0] & 0xff;
+        int lo = bucketStart(b), hi = bucketStart(b + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareId(mid, rawId);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return index.getInt(entryPosition(mid) + PackFile.ID_SIZE);
+            }
+        }
+        return CommitGraph.NONE;
+    }
+
+    /** Add to ROWS the graph rows of the commits whose ids start with the
+     *  hex digits PREFIX, stopping once ROWS has LIMIT elements.  PREFIX
+     *  must be non-empty and consist of lower-case hex digits. */
+    void findPrefix(String prefix, List<Integer> rows, int limit) {
+        if (count == 0) {
+            return;
+        }
+        byte[] low = fromHex(padPrefix(prefix, '0'));
+        byte[] high = fromHex(padPrefix(prefix, 'f'));
+        int lo = bucketStart(low[0] & 0xff);
+        int hi = bucketStart((high[0] & 0xff) + 1);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareId(mid, low) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int k = lo; k < count && rows.size() < limit
+                 && compareId(k, high) <= 0; k += 1) {
+            rows.add(index.getInt(entryPosition(k) + PackFile.ID_SIZE));
+        }
+    }
+
+    /** Rewrite the index file to cover all rows of GRAPH, merging the rows
+     *  that are missing from OLD into its entries, and return the new
+     *  index. */
+    static CommitIndex rebuild(CommitGraph graph, CommitIndex old) {
+        int total = graph.size();
+        Integer[] added = new Integer[total - old.count];
+        for (int i = 0; i < added.length; i += 1) {
+            added[i] = old.count + i;
+        }
+        Arrays.sort(added, (x, y) -> Arrays.compareUnsigned(graph.rawId(x),
+                                                           graph.rawId(y)));
+        ByteBuffer result =
+            ByteBuffer.allocate(ENTRIES + total * ENTRY_SIZE);
+        result.putInt(MAGIC).putInt(VERSION).putInt(total);
+        int[] fanout = new int[FANOUT];
+        byte[] entry = new byte[ENTRY_SIZE];
+        result.position(ENTRIES);
+        int k, i;
+        k = i = 0;
+        while (k < old.count || i < added.length) {
+            if (i == added.length || (k < old.count
+                    && old.compareId(k, graph.rawId(added[i])) < 0)) {
+                old.index.get(entryPosition(k), entry);
+                result.put(entry);
+                k += 1;
+            } else {
+                result.put(graph.rawId(added[i])).putInt(added[i]);
+                i += 1;
+            }
+            fanout[result.get(result.position() - ENTRY_SIZE) & 0xff] += 1;
+        }
+        for (int b = 0, sum = 0; b < FANOUT; b += 1) {
+            sum += fanout[b];
+            result.putInt(HEADER_SIZE + 4 * b, sum);
+        }
+        result.flip();
+
+        File tmp = join(GITLET_DIR, "commit-index.tmp");
+        try (FileChannel out =
+                 FileChannel.open(tmp.toPath(),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+            while (result.hasRemaining()) {
+                out.write(result);
+            }
+            out.force(true);
+            Files.move(tmp.toPath(), INDEX_FILE.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Cannot write commit index: %s", excp.getMessage());
+        }
+        return new CommitIndex(result.rewind(), total);
+    }
+
+    /** Returns the number of entries whose ids start with a byte less than
+     *  B. */
+    private int bucketStart(int b) {
+        if (b == 0) {
+            return 0;
+        }
+        return index.getInt(HEADER_SIZE + 4 * (b - 1));
+    }
+
+    /** Compare the id of entry K with RAWID as unsigned bytes. */
+    private int compareId(int k, byte[] rawId) {
+        int pos = entryPosition(k);
+        for (int i = 0; i < PackFile.ID_SIZE; i += 1) {
+            int c = Byte.compareUnsigned(index.get(pos + i), rawId[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the position of entry K in the index file. */
+    private static int entryPosition(int k) {
+        return ENTRIES + k * ENTRY_SIZE;
+    }
+
+    /** Returns PREFIX extended to a full UID with copies of DIGIT. */
+    private static String padPrefix(String prefix, char digit) {
+        char[] result = new char[UID_LENGTH];
+        Arrays.fill(result, digit);
+        prefix.getChars(0, prefix.length(), result, 0);
+        return new String(result);
+    }
+}
@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import static gitlet.Utils.*;
+
+/** Delta encoding of one byte sequence (the target) against another (the
+ *  base).
+ *
+ *  A delta is the varint length of the base, the varint length of the
+ *  target, and then a sequence of instructions that rebuild the target:
+ *
+ *      0x01 - 0x7f    insert: the opcode is a count N, and the next N bytes
+ *                     of the delta are copied to the output.
+ *      0x80           copy: followed by a varint offset and a varint length
+ *                     naming a range of the base to copy to the output.
+ *
+ *  Deltas are found by indexing the base in BLOCK-byte blocks and sliding a
+ *  rolling hash over the target.  Each hash hit is verified and extended in
+ *  both directions, so a change of a few lines in a long file costs a few
+ *  copy instructions plus the changed bytes.
+ */
+class Delta {
+
+    /** Opcode of a copy instruction. */
+    private static final int COPY = 0x80;
+    /** Largest number of bytes in one insert instruction. */
+    private static final int MAX_INSERT = 0x7f;
+    /** Size of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int HASH_BASE = 257;
+
+    /** Returns a delta that rebuilds TARGET from BASE. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        int dropFactor = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            dropFactor *= HASH_BASE;
+        }
+
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer start = blocks.get(h);
+            if (start != null && matches(base, start, target, i)) {
+                int from = start;
+                int len = BLOCK;
+                while (from + len < base.length && i + len < target.length
+                       && base[from + len] == target[i + len]) {
+                    len += 1;
+                }
+                while (i > pending && from > 0
+                       && base[from - 1] == target[i - 1]) {
+                    i -= 1;
+                    from -= 1;
+                    len += 1;
+                }
+                writeInsert(out, target, pending, i);
+                out.write(COPY);
+                writeVarint(out, from);
+                writeVarint(out, len);
+                i += len;
+                pending = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - (target[i] & 0xff) * dropFactor) * HASH_BASE
+                        + (target[i + BLOCK] & 0xff);
+                }
+                i += 1;
+            }
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the target rebuilt by applying DELTA to BASE.  Throws a
+     *  GitletException if DELTA was not made against a base like BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(delta);
+            if (readVarint(in) != base.length) {
+                throw error("Delta does not match its base.");
+            }
+            byte[] result = new byte[(int) readVarint(in)];
+            int n = 0;
+            while (in.hasRemaining()) {
+                int op = in.get() & 0xff;
+                if (op == COPY) {
+                    int from = (int) readVarint(in);
+                    int len = (int) readVarint(in);
+                    System.arraycopy(base, from, result, n, len);
+                    n += len;
+                } else if (op != 0 && op <= MAX_INSERT) {
+                    in.get(result, n, op);
+                    n += op;
+                } else {
+                    throw error("Corrupt delta.");
+                }
+            }
+            if (n != result.length) {
+                throw error("Corrupt delta.");
+            }
+            return result;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException excp) {
+            throw error("Corrupt delta.");
+        }
+    }
+
+    /** Write insert instructions for TARGET[FROM .. TO) to OUT. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target,
+                                    int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    /** Returns the rolling hash of the BLOCK bytes of DATA at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = h * HASH_BASE + (data[k] & 0xff);
+        }
+        return h;
+    }
+
+    /** Returns true iff the BLOCK bytes of BASE at BASESTART equal those of
+     *  TARGET at TARGETSTART. */
+    private static boolean matches(byte[] base, int baseStart,
+                                   byte[] target, int targetStart) {
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (base[baseStart + k] != target[targetStart + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,271 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** The differences between two sequences of lines, as a series of hunks.
+ *
+ *  The differences are found with Myers' O(ND) algorithm in its
+ *  linear-space form ("An O(ND) Difference Algorithm and Its Variations",
+ *  1986), comparing lines by their hashes (see Lines).  The common prefix
+ *  and suffix of the two sequences are set aside first; then the "middle
+ *  snake" of a shortest edit script is found by searching forward from the
+ *  start and backward from the end at once, and the parts before and after
+ *  it are diffed in the same way.  Time is O((N+M)D) for sequences of N
+ *  and M lines that differ by D lines, and space is O(N+M).
+ *
+ *  The parts are worked on in order, from an explicit stack, so hunks are
+ *  produced lazily, in increasing order of line number, as the iterator
+ *  is advanced; merge and diff both consume them that way.
+ */
+class Diff implements Iterable<Diff.Hunk> {
+
+    /** Hashes of the old and new lines. */
+    private final long[] a, b;
+
+    /** A maximal run of differing lines: lines oldStart() .. oldEnd()-1
+     *  of the old sequence are replaced by lines newStart() .. newEnd()-1
+     *  of the new.  Lines are numbered from 0, and either range may be
+     *  empty, but not both. */
+    static class Hunk {
+        /** Bounds of the replaced and inserted lines. */
+        private final int oldStart, oldEnd, newStart, newEnd;
+
+        /** The hunk replacing old lines OLDSTART .. OLDEND-1 with new
+         *  lines NEWSTART .. NEWEND-1. */
+        Hunk(int oldStart, int oldEnd, int newStart, int newEnd) {
+            this.oldStart = oldStart;
+            this.oldEnd = oldEnd;
+            this.newStart = newStart;
+            this.newEnd = newEnd;
+        }
+
+        /** Returns the first old line replaced. */
+        int oldStart() {
+            return oldStart;
+        }
+
+        /** Returns the line after the last old line replaced. */
+        int oldEnd() {
+            return oldEnd;
+        }
+
+        /** Returns the first new line inserted. */
+        int newStart() {
+            return newStart;
+        }
+
+        /** Returns the line after the last new line inserted. */
+        int newEnd() {
+            return newEnd;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%d,%d)->[%d,%d)", oldStart, oldEnd,
+                                 newStart, newEnd);
+        }
+    }
+
+    /** The differences between OLDLINES and NEWLINES. */
+    Diff(Lines oldLines, Lines newLines) {
+        this.a = hashes(oldLines);
+        this.b = hashes(newLines);
+    }
+
+    /** Returns true iff the two sequences are the same. */
+    boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    /** Returns an iterator over my hunks, in order.  Each call starts the
+     *  diff afresh. */
+    @Override
+    public Iterator<Hunk> iterator() {
+        return new HunkIterator();
+    }
+
+    /** Produces the hunks of this diff on demand. */
+    private class HunkIterator implements Iterator<Hunk> {
+
+        /** Parts still to be diffed, the next one on top.  A part is either
+         *  {oldLo, oldHi, newLo, newHi}, the lines still to be compared, or
+         *  {length}, a run of equal lines between two such parts. */
+        private final Deque<int[]> work = new ArrayDeque<>();
+        /** The hunk being accumulated, or null. */
+        private int[] pending;
+        /** The next hunk to deliver, or null if not yet found. */
+        private Hunk next;
+        /** Forward and reverse furthest-reaching paths, by diagonal. */
+        private final int[] forward, reverse;
+
+        /** An iterator over the whole diff. */
+        HunkIterator() {
+            work.push(new int[] { 0, a.length, 0, b.length });
+            int size = 2 * ((a.length + b.length + 1) / 2) + 3;
+            forward = new int[size];
+            reverse = new int[size];
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !work.isEmpty()) {
+                int[] part = work.pop();
+                if (part.length == 1) {
+                    if (part[0] > 0) {
+                        flush();
+                    }
+                } else {
+                    split(part[0], part[1], part[2], part[3]);
+                }
+            }
+            if (next == null) {
+                flush();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Hunk next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Hunk result = next;
+            next = null;
+            return result;
+        }
+
+        /** Diff old lines OLDLO .. OLDHI-1 against new lines NEWLO ..
+         *  NEWHI-1, either adding a change to the pending hunk or pushing
+         *  smaller parts on WORK. */
+        private void split(int oldLo, int oldHi, int newLo, int newHi) {
+            int prefix = 0;
+            while (oldLo + prefix < oldHi && newLo + prefix < newHi
+                   && a[oldLo + prefix] == b[newLo + prefix]) {
+                prefix += 1;
+            }
+            if (prefix > 0) {
+                flush();
+                oldLo += prefix;
+                newLo += prefix;
+            }
+            int suffix = 0;
+            while (oldLo < oldHi - suffix && newLo < newHi - suffix
+                   && a[oldHi - suffix - 1] == b[newHi - suffix - 1]) {
+                suffix += 1;
+            }
+            oldHi -= suffix;
+            newHi -= suffix;
+            work.push(new int[] { suffix });
+            if (oldLo == oldHi && newLo == newHi) {
+                return;
+            }
+            if (oldLo == oldHi || newLo == newHi) {
+                change(oldLo, oldHi, newLo, newHi);
+                return;
+            }
+            int[] snake = middleSnake(oldLo, oldHi, newLo, newHi);
+            work.push(new int[] { snake[2], oldHi, snake[3], newHi });
+            work.push(new int[] { snake[2] - snake[0] });
+            work.push(new int[] { oldLo, snake[0], newLo, snake[1] });
+        }
+
+        /** Record that old lines OLDLO .. OLDHI-1 are replaced by new lines
+         *  NEWLO .. NEWHI-1, extending the pending hunk if it ends just
+         *  where this change begins. */
+        private void change(int oldLo, int oldHi, int newLo, int newHi) {
+            if (pending != null && pending[1] == oldLo
+                && pending[3] == newLo) {
+                pending[1] = oldHi;
+                pending[3] = newHi;
+            } else {
+                flush();
+                pending = new int[] { oldLo, oldHi, newLo, newHi };
+            }
+        }
+
+        /** Make the pending hunk, if any, the next one delivered. */
+        private void flush() {
+            if (pending != null) {
+                next = new Hunk(pending[0], pending[1], pending[2],
+                                pending[3]);
+                pending = null;
+            }
+        }
+
+        /** Returns {x, y, u, v} such that old lines x .. u-1 equal new lines
+         *  y .. v-1 and lie on a shortest path from (OLDLO, NEWLO) to
+         *  (OLDHI, NEWHI), splitting it roughly in half.  The first and
+         *  last lines of the two ranges must differ. */
+        private int[] middleSnake(int oldLo, int oldHi, int newLo,
+                                  int newHi) {
+            int n = oldHi - oldLo, m = newHi - newLo;
+            int delta = n - m;
+            boolean odd = (delta & 1) != 0;
+            int max = (n + m + 1) / 2;
+            int off = max + 1;
+            forward[off + 1] = 0;
+            reverse[off + 1] = 0;
+            for (int d = 0; d <= max; d += 1) {
+                for (int k = -d; k <= d; k += 2) {
+                    int x;
+                    if (k == -d || (k != d
+                            && forward[off + k - 1] < forward[off + k + 1])) {
+                        x = forward[off + k + 1];
+                    } else {
+                        x = forward[off + k - 1] + 1;
+                    }
+                    int y = x - k;
+                    int x0 = x, y0 = y;
+                    while (x < n && y < m
+                           && a[oldLo + x] == b[newLo + y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    forward[off + k] = x;
+                    int kr = delta - k;
+                    if (odd && kr >= -(d - 1) && kr <= d - 1
+                        && x + reverse[off + kr] >= n) {
+                        return new int[] { oldLo + x0, newLo + y0,
+                                           oldLo + x, newLo + y };
+                    }
+                }
+                for (int kr = -d; kr <= d; kr += 2) {
+                    int x;
+                    if (kr == -d || (kr != d
+                            && reverse[off + kr - 1] < reverse[off + kr + 1])) {
+                        x = reverse[off + kr + 1];
+                    } else {
+                        x = reverse[off + kr - 1] + 1;
+                    }
+                    int y = x - kr;
+                    int x0 = x, y0 = y;
+                    while (x < n && y < m
+                           && a[oldHi - x - 1] == b[newHi - y - 1]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    reverse[off + kr] = x;
+                    int k = delta - kr;
+                    if (!odd && k >= -d && k <= d
+                        && forward[off + k] + x >= n) {
+                        return new int[] { oldHi - x, newHi - y,
+                                           oldHi - x0, newHi - y0 };
+                    }
+                }
+            }
+            throw new IllegalStateException("no middle snake");
+        }
+    }
+
+    /** Returns the hashes of LINES. */
+    private static long[] hashes(Lines lines) {
+        long[] result = new long[lines.size()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = lines.hash(k);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/** A line-level three-way merge, in the manner of diff3.
+ *
+ *  The changes from a common ancestor (the base) to each of two versions
+ *  are found with Diff.  Hunks of the two diffs whose base ranges overlap
+ *  or touch are gathered into one region.  A region changed on one side
+ *  only takes that side's lines; a region changed the same way on both
+ *  sides takes those lines once; any other region is a conflict, and the
+ *  two versions of just that region are written between conflict
+ *  markers.  Lines outside all regions are copied from the base.  The
+ *  hunks are consumed as Diff produces them and the result is written as
+ *  it is worked out, so the merged file is never assembled in memory.
+ */
+class Diff3 {
+
+    /** Marker before the current version of a conflicting region. */
+    static final byte[] OURS_MARKER = bytes("<<<<<<< HEAD\n");
+    /** Marker between the two versions of a conflicting region. */
+    static final byte[] SEPARATOR = bytes("=======\n");
+    /** Marker after the given version of a conflicting region. */
+    static final byte[] THEIRS_MARKER = bytes(">>>>>>>\n");
+
+    /** Lines of the base and of the two versions. */
+    private final Lines base, ours, theirs;
+    /** The changes from BASE to OURS and to THEIRS. */
+    private final Iterator<Diff.Hunk> ourHunks, theirHunks;
+    /** The next hunks of each side not yet put in a region, or null. */
+    private Diff.Hunk ourNext, theirNext;
+    /** Lines added less lines removed by the hunks of each side put in
+     *  regions so far. */
+    private int ourShift, theirShift;
+
+    /** A merge of OURS and THEIRS, both descended from BASE. */
+    private Diff3(Lines base, Lines ours, Lines theirs) {
+        this.base = base;
+        this.ours = ours;
+        this.theirs = theirs;
+        ourHunks = new Diff(base, ours).iterator();
+        theirHunks = new Diff(base, theirs).iterator();
+        ourNext = ourHunks.hasNext() ? ourHunks.next() : null;
+        theirNext = theirHunks.hasNext() ? theirHunks.next() : null;
+    }
+
+    /** Write to OUT the merge of OURS and THEIRS, the current and given
+     *  versions of a file whose version at the split point is BASE, and
+     *  return true iff it has conflicts. */
+    static boolean merge(Lines base, Lines ours, Lines theirs,
+                         OutputStream out) throws IOException {
+        return new Diff3(base, ours, theirs).write(out);
+    }
+
+    /** Write the merge to OUT, returning true iff it has conflicts. */
+    private boolean write(OutputStream out) throws IOException {
+        boolean conflicts = false;
+        int copied = 0;
+        while (ourNext != null || theirNext != null) {
+            int lo = Math.min(
+                ourNext == null ? Integer.MAX_VALUE : ourNext.oldStart(),
+                theirNext == null ? Integer.MAX_VALUE : theirNext.oldStart());
+            int hi = lo;
+            int ourLo = lo + ourShift, theirLo = lo + theirShift;
+            boolean ourChange = false, theirChange = false;
+            while (true) {
+                if (ourNext != null && ourNext.oldStart() <= hi) {
+                    hi = Math.max(hi, ourNext.oldEnd());
+                    ourShift = ourNext.newEnd() - ourNext.oldEnd();
+                    ourChange = true;
+                    ourNext = ourHunks.hasNext() ? ourHunks.next() : null;
+                } else if (theirNext != null && theirNext.oldStart() <= hi) {
+                    hi = Math.max(hi, theirNext.oldEnd());
+                    theirShift = theirNext.newEnd() - theirNext.oldEnd();
+                    theirChange = true;
+                    theirNext = theirHunks.hasNext() ? theirHunks.next()
+                        : null;
+                } else {
+                    break;
+                }
+            }
+            int ourHi = hi + ourShift, theirHi = hi + theirShift;
+            base.write(copied, lo, out);
+            copied = hi;
+            if (!theirChange) {
+                ours.write(ourLo, ourHi, out);
+            } else if (!ourChange) {
+                theirs.write(theirLo, theirHi, out);
+            } else if (same(ours, ourLo, ourHi, theirs, theirLo, theirHi)) {
+                ours.write(ourLo, ourHi, out);
+            } else {
+                out.write(OURS_MARKER);
+                ours.write(ourLo, ourHi, out);
+                out.write(SEPARATOR);
+                theirs.write(theirLo, theirHi, out);
+                out.write(THEIRS_MARKER);
+                conflicts = true;
+            }
+        }
+        base.write(copied, base.size(), out);
+        return conflicts;
+    }
+
+    /** Returns true iff lines ALO .. AHI-1 of A are the same as lines
+     *  BLO .. BHI-1 of B. */
+    private static boolean same(Lines a, int aLo, int aHi,
+                                Lines b, int bLo, int bHi) {
+        if (aHi - aLo != bHi - bLo) {
+            return false;
+        }
+        for (int k = 0; aLo + k < aHi; k += 1) {
+            if (a.hash(aLo + k) != b.hash(bLo + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the UTF-8 encoding of S. */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -3,41 +3,67 @@ package gitlet;
 import java.io.File;
 
 /** A debugging class whose main program may be invoked as follows:
- *      java gitlet.DumpObj FILE...
- *  where each FILE is a file produced by Utils.writeObject (or any file
- *  containing a serialized object).  This will simply read FILE,
- *  deserialize it, and call the dump method on the resulting Object.
- *  The object must implement the gitlet.Dumpable interface for this
- *  to work.  For example, you might define your class like this:
- *
- *        import java.io.Serializable;
- *        import java.util.TreeMap;
- *        class MyClass implements Serializeable, Dumpable {
- *            ...
- *            @Override
- *            public void dump() {
- *               System.out.printf("size: %d%nmapping: %s%n", _size, _mapping);
- *            }
- *            ...
- *            int _size;
- *            TreeMap<String, String> _mapping = new TreeMap<>();
- *        }
- *
- *  As illustrated, your dump method should print useful information from
- *  objects of your class.
+ *      java gitlet.DumpObj OBJECT...
+ *  from the top of a Gitlet working directory, where each OBJECT is the
+ *  id of an object in the repository's ObjectStore, the path of a loose
+ *  object file (.gitlet/objects/ab/cdef...), or the path of the staging
+ *  file (.gitlet/staging).  Objects are no longer serialized Java objects,
+ *  so each is decoded as the rest of Gitlet reads it: a commit through
+ *  Commit.load (and so CommitCodec) and the staging area through
+ *  StagingArea.load, after which the dump method of the result (see
+ *  gitlet.Dumpable) prints it.  A tree is printed as the files under it,
+ *  a chunked blob as the ids of its chunks, and any other blob as its
+ *  length.
  *  @author P. N. Hilfinger
  */
 public class DumpObj {
 
-    /** Deserialize and apply dump to the contents of each of the files
-     *  in FILES. */
-    public static void main(String... files) {
-        for (String fileName : files) {
-            Dumpable obj = Utils.readObject(new File(fileName),
-                                            Dumpable.class);
-            obj.dump();
-            System.out.println("---");
+    /** Decode and dump each of the objects named in OBJECTS. */
+    public static void main(String... objects) {
+        try {
+            Repository.checkInitialized();
+            for (String name : objects) {
+                File file = new File(name);
+                if (file.getAbsoluteFile()
+                    .equals(StagingArea.STAGING_FILE)) {
+                    StagingArea.load().dump();
+                } else {
+                    dump(file.isFile() ? idOf(file) : name);
+                }
+                System.out.println("---");
+            }
+        } catch (GitletException excp) {
+            Utils.message(excp.getMessage());
         }
     }
-}
 
+    /** Returns the object id of the loose object file FILE: the name of
+     *  its shard directory followed by its own name, or just its own name
+     *  if it is directly in the objects directory. */
+    private static String idOf(File file) {
+        String name = file.getName();
+        String shard = file.getAbsoluteFile().getParentFile().getName();
+        return shard.length() == 2 ? shard + name : name;
+    }
+
+    /** Print the object with id ID. */
+    private static void dump(String id) {
+        Commit commit = Commit.load(id);
+        if (commit != null) {
+            System.out.printf("commit %s%n", id);
+            commit.dump();
+        } else if (ObjectStore.read(id, ObjectStore.TREE) != null) {
+            System.out.printf("tree %s%nfiles: %s%n", id, Tree.files(id));
+        } else if (ObjectStore.isChunked(id)) {
+            System.out.printf("blob %s%nchunks: %s%n", id,
+                              ObjectStore.chunks(id));
+        } else {
+            byte[] blob = ObjectStore.read(id, ObjectStore.BLOB);
+            if (blob == null) {
+                System.out.printf("No object %s.%n", id);
+            } else {
+                System.out.printf("blob %s%nlength: %d%n", id, blob.length);
+            }
+        }
+    }
+}
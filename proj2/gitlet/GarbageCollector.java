@@ -0,0 +1,275 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static gitlet.Utils.*;
+
+/** Garbage collection of the object store.
+ *
+ *  The roots are every commit in the CommitCatalog, since global-log, find
+ *  and checkout by id promise every commit ever made, together with the
+ *  head of each branch and the blobs in the staging area.  A root commit
+ *  keeps its root tree alive (or, for commits made before trees, the blobs
+ *  of its file table); a tree node keeps its parts, subdirectory trees and
+ *  file blobs; a blob stored as a delta keeps its chain of bases, and a
+ *  chunked blob its chunks.  Objects that are abandoned by rm, reset or a
+ *  changed file staged again, and commits that never reached the catalog,
+ *  are then swept.
+ *
+ *  Every stored object is numbered by its position in one sorted table of
+ *  raw ids, and marking sets its bit in a bitset of that many bits, so an
+ *  object is marked, and its references followed, exactly once however
+ *  many commits share it.  The bits are set with an atomic or, and the
+ *  root commits and the subtrees of each tree are spread over a fork/join
+ *  pool.  The sweep deletes unmarked loose objects and rewrites the pack
+ *  if it holds any (see PackFile.retain).  Nothing is deleted if marking
+ *  fails, for instance because a reachable object is corrupt.
+ */
+class GarbageCollector {
+
+    /** Root commits handled by one task without splitting. */
+    private static final int ROOTS_PER_TASK = 16;
+
+    /** Raw ids of all stored objects, ID_SIZE bytes each, in increasing
+     *  order. */
+    private final byte[] ids;
+    /** Number of stored objects. */
+    private final int count;
+    /** Bit K is set iff object K has been marked. */
+    private final AtomicLongArray marks;
+    /** Ids of the loose objects. */
+    private final List<String> loose = new ArrayList<>();
+    /** True iff some object is packed. */
+    private final boolean packed;
+    /** Time taken by marking and by sweeping, in nanoseconds. */
+    private long markTime, sweepTime;
+    /** Number of objects removed, and bytes freed, by the sweep. */
+    private long removed, reclaimed;
+
+    /** A collector for the objects stored now. */
+    GarbageCollector() {
+        List<String> all = new ArrayList<>(ObjectStore.packedIds());
+        packed = !all.isEmpty();
+        ObjectStore.forEachLoose(loose::add);
+        all.addAll(loose);
+        all.sort(null);
+        byte[] raw = new byte[all.size() * PackFile.ID_SIZE];
+        int n = 0;
+        for (int k = 0; k < all.size(); k += 1) {
+            if (k == 0 || !all.get(k).equals(all.get(k - 1))) {
+                System.arraycopy(fromHex(all.get(k)), 0, raw,
+                                 n * PackFile.ID_SIZE, PackFile.ID_SIZE);
+                n += 1;
+            }
+        }
+        ids = raw;
+        count = n;
+        marks = new AtomicLongArray((count + 63) / 64);
+    }
+
+    /** Mark every object reachable from the roots, then delete the
+     *  rest, and empty the object caches. */
+    void collect() {
+        List<String> roots = new ArrayList<>();
+        CommitCatalog catalog = CommitCatalog.load();
+        for (int k = 0; k < catalog.size(); k += 1) {
+            roots.add(catalog.id(k));
+        }
+        roots.addAll(RefStore.all().values());
+        long start = System.nanoTime();
+        for (String blob : StagingArea.load().getAdded().values()) {
+            markBlob(blob);
+        }
+        ForkJoinPool pool = new ForkJoinPool(WorkingTree.PARALLELISM);
+        try {
+            pool.invoke(new CommitsTask(roots, 0, roots.size()));
+        } finally {
+            pool.shutdown();
+        }
+        markTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (String id : loose) {
+            if (!isMarked(id)) {
+                long size = ObjectStore.deleteLoose(id);
+                if (size > 0) {
+                    removed += 1;
+                    reclaimed += size;
+                }
+            }
+        }
+        if (packed) {
+            int before = ObjectStore.packedIds().size();
+            reclaimed += ObjectStore.retainPacked(this::isMarked);
+            removed += before - ObjectStore.packedIds().size();
+        }
+        Commit.CACHE.clear();
+        Tree.CACHE.clear();
+        ObjectStore.BLOBS.clear();
+        sweepTime = System.nanoTime() - start;
+    }
+
+    /** Returns the number of stored objects before the sweep. */
+    int objects() {
+        return count;
+    }
+
+    /** Returns the number of objects marked as reachable. */
+    int marked() {
+        int result = 0;
+        for (int w = 0; w < marks.length(); w += 1) {
+            result += Long.bitCount(marks.get(w));
+        }
+        return result;
+    }
+
+    /** Returns the number of objects deleted. */
+    long removed() {
+        return removed;
+    }
+
+    /** Returns the number of bytes freed. */
+    long reclaimed() {
+        return reclaimed;
+    }
+
+    /** Returns the time taken to mark, in milliseconds. */
+    long markMillis() {
+        return markTime / 1_000_000;
+    }
+
+    /** Returns the time taken to sweep, in milliseconds. */
+    long sweepMillis() {
+        return sweepTime / 1_000_000;
+    }
+
+    /** Mark the commit with id ID and what it refers to. */
+    private void markCommit(String id) {
+        if (!mark(id)) {
+            return;
+        }
+        Commit commit = Commit.load(id);
+        if (commit == null) {
+            throw error("Missing commit %s.", id);
+        } else if (commit.hasTree()) {
+            new TreeTask(commit.getTree()).invoke();
+        } else {
+            for (String blob : commit.getBlobs().values()) {
+                markBlob(blob);
+            }
+        }
+    }
+
+    /** Mark the blob with id BLOB and the blobs its stored form is built
+     *  from: the chain of bases it is stored against, or its chunks. */
+    private void markBlob(String blob) {
+        if (mark(blob)) {
+            for (String part : ObjectStore.parts(blob)) {
+                markBlob(part);
+            }
+        }
+    }
+
+    /** Mark the object with id ID, returning true iff it is stored and was
+     *  not already marked. */
+    private boolean mark(String id) {
+        int k = indexOf(id);
+        if (k < 0) {
+            return false;
+        }
+        long bit = 1L << k;
+        return (marks.getAndAccumulate(k >>> 6, bit, (a, b) -> a | b)
+                & bit) == 0;
+    }
+
+    /** Returns true iff the object with id ID has been marked. */
+    private boolean isMarked(String id) {
+        int k = indexOf(id);
+        return k >= 0 && (marks.get(k >>> 6) & (1L << k)) != 0;
+    }
+
+    /** Returns the number of the object with id ID, or -1 if it is not
+     *  stored. */
+    private int indexOf(String id) {
+        byte[] raw = fromHex(id);
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int from = mid * PackFile.ID_SIZE;
+            int c = Arrays.compareUnsigned(ids, from,
+                                           from + PackFile.ID_SIZE,
+                                           raw, 0, PackFile.ID_SIZE);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** A task marking a range of root commits, splitting itself in half
+     *  until the pieces are small. */
+    private class CommitsTask extends RecursiveAction {
+        /** The root commit ids. */
+        private final List<String> roots;
+        /** Bounds of my range of ROOTS. */
+        private final int lo, hi;
+
+        /** A task marking ROOTS[LO .. HI-1]. */
+        CommitsTask(List<String> roots, int lo, int hi) {
+            this.roots = roots;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= ROOTS_PER_TASK) {
+                for (int i = lo; i < hi; i += 1) {
+                    markCommit(roots.get(i));
+                }
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new CommitsTask(roots, lo, mid),
+                          new CommitsTask(roots, mid, hi));
+            }
+        }
+    }
+
+    /** A task marking a tree node, its blobs and, in parallel, the nodes
+     *  it refers to. */
+    private class TreeTask extends RecursiveAction {
+        /** The id of the node. */
+        private final String id;
+
+        /** A task marking the node with id ID. */
+        TreeTask(String id) {
+            this.id = id;
+        }
+
+        @Override
+        protected void compute() {
+            if (!mark(id)) {
+                return;
+            }
+            List<String> blobs = new ArrayList<>();
+            List<String> trees = new ArrayList<>();
+            Tree.references(id, blobs, trees);
+            for (String blob : blobs) {
+                markBlob(blob);
+            }
+            List<TreeTask> tasks = new ArrayList<>(trees.size());
+            for (String tree : trees) {
+                tasks.add(new TreeTask(tree));
+            }
+            invokeAll(tasks);
+        }
+    }
+}
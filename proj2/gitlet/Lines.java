@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static gitlet.Utils.*;
+
+/** The lines of a file or blob, as 64-bit hashes and offsets.
+ *
+ *  A file is read once, front to back, through a fixed-size buffer, and
+ *  only the hash and the starting offset of each line are kept, so the
+ *  lines of a large file take 16 bytes each however long they are.  The
+ *  text of a line is read back from the file when it is needed.  A line
+ *  includes its terminating newline, if it has one, so a last line with
+ *  no newline differs from the same text with one.  Lines with equal
+ *  hashes are taken to be equal; with 64-bit hashes a collision between
+ *  lines of the files being compared is vanishingly unlikely.
+ */
+class Lines {
+
+    /** Size of the buffer used to read files. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Offset basis of the 64-bit FNV-1a hash. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    /** Prime of the 64-bit FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Hash of each line. */
+    private long[] hashes = new long[16];
+    /** Offset of the start of each line, followed by the total length. */
+    private long[] starts = new long[17];
+    /** Number of lines. */
+    private int count;
+    /** The contents, if they are in memory, or null. */
+    private final byte[] contents;
+    /** The file holding the contents, if they are not in memory. */
+    private final File file;
+    /** True iff FILE is to be deleted when I am closed. */
+    private boolean temporary;
+    /** Channel used to read lines back from FILE, opened on first use. */
+    private FileChannel reader;
+    /** Hash of the line being scanned. */
+    private long hash = FNV_BASIS;
+    /** True iff some bytes of the line being scanned have been seen. */
+    private boolean inLine;
+
+    /** Lines whose text is in CONTENTS, or else in FILE. */
+    private Lines(byte[] contents, File file) {
+        this.contents = contents;
+        this.file = file;
+    }
+
+    /** Returns the lines of CONTENTS. */
+    static Lines of(byte[] contents) {
+        Lines result = new Lines(contents, null);
+        result.scan(contents, contents.length, 0);
+        result.finish(contents.length);
+        return result;
+    }
+
+    /** Returns the lines of FILE, which are read in one streaming pass.
+     *  FILE must be a plain file. */
+    static Lines of(File file) {
+        Lines result = new Lines(null, file);
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = 0;
+            while (in.read(buf) >= 0) {
+                result.scan(buf.array(), buf.position(), position);
+                position += buf.position();
+                buf.clear();
+            }
+            result.finish(position);
+        } catch (IOException excp) {
+            throw error("Cannot read %s: %s", file.getName(),
+                        excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Returns the lines of FILE, as of(FILE) does, and deletes FILE when
+     *  they are closed.  FILE is also deleted on exit in case they are
+     *  not. */
+    static Lines ofTemporary(File file) {
+        file.deleteOnExit();
+        Lines result = of(file);
+        result.temporary = true;
+        return result;
+    }
+
+    /** Returns the lines of nothing. */
+    static Lines empty() {
+        return of(new byte[0]);
+    }
+
+    /** Returns the number of lines. */
+    int size() {
+        return count;
+    }
+
+    /** Returns the hash of line K (numbering from 0). */
+    long hash(int k) {
+        return hashes[k];
+    }
+
+    /** Returns true iff the last line does not end in a newline. */
+    boolean missingFinalNewline() {
+        return count > 0 && starts[count] > starts[count - 1]
+            && lastByte() != '\n';
+    }
+
+    /** Write lines LO .. HI-1 to OUT, exactly as they appear. */
+    void write(int lo, int hi, OutputStream out) throws IOException {
+        write(lo, hi, null, out);
+    }
+
+    /** Write lines LO .. HI-1 to OUT, each preceded by the bytes PREFIX
+     *  unless PREFIX is null.  Lines held in a file are copied through a
+     *  fixed-size buffer. */
+    void write(int lo, int hi, byte[] prefix, OutputStream out)
+        throws IOException {
+        long pos = starts[lo], end = starts[hi];
+        int k = lo;
+        ByteBuffer buf = null;
+        while (pos < end) {
+            byte[] data;
+            int off, n;
+            if (contents != null) {
+                data = contents;
+                off = (int) pos;
+                n = (int) (end - pos);
+            } else {
+                if (reader == null) {
+                    reader = FileChannel.open(file.toPath());
+                }
+                if (buf == null) {
+                    buf = ByteBuffer.allocate(
+                        (int) Math.min(BUFFER_SIZE, end - pos));
+                }
+                buf.clear().limit((int) Math.min(buf.capacity(), end - pos));
+                n = reader.read(buf, pos);
+                if (n <= 0) {
+                    throw new IOException("file changed while being read");
+                }
+                data = buf.array();
+                off = 0;
+            }
+            if (prefix == null) {
+                out.write(data, off, n);
+            } else {
+                for (int i = 0; i < n; ) {
+                    if (k < hi && starts[k] == pos + i) {
+                        out.write(prefix);
+                        k += 1;
+                    }
+                    int stop = (int) Math.min(n, starts[k] - pos);
+                    out.write(data, off + i, stop - i);
+                    i = stop;
+                }
+            }
+            pos += n;
+        }
+    }
+
+    /** Release the channel used to read lines back, if any, and delete
+     *  a temporary file. */
+    void close() {
+        try {
+            if (reader != null) {
+                reader.close();
+            }
+        } catch (IOException excp) {
+            /* Ignore: the file was only read. */
+        }
+        if (temporary) {
+            file.delete();
+        }
+    }
+
+    /** Scan the first N bytes of DATA, which start at offset POSITION of
+     *  the contents, ending a line at each newline. */
+    private void scan(byte[] data, int n, long position) {
+        for (int i = 0; i < n; i += 1) {
+            byte b = data[i];
+            if (!inLine) {
+                addLine(position + i);
+                inLine = true;
+            }
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+            if (b == '\n') {
+                hashes[count - 1] = hash;
+                hash = FNV_BASIS;
+                inLine = false;
+            }
+        }
+    }
+
+    /** Finish scanning contents that are LENGTH bytes long. */
+    private void finish(long length) {
+        if (inLine) {
+            hashes[count - 1] = hash;
+        }
+        starts[count] = length;
+    }
+
+    /** Start a new line at offset START. */
+    private void addLine(long start) {
+        if (count == hashes.length) {
+            hashes = Arrays.copyOf(hashes, 2 * count);
+            starts = Arrays.copyOf(starts, 2 * count + 1);
+        }
+        starts[count] = start;
+        count += 1;
+    }
+
+    /** Returns the last byte of the contents, which must not be empty. */
+    private byte lastByte() {
+        long last = starts[count] - 1;
+        if (contents != null) {
+            return contents[(int) last];
+        }
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            ByteBuffer buf = ByteBuffer.allocate(1);
+            in.read(buf, last);
+            return buf.get(0);
+        } catch (IOException excp) {
+            throw error("Cannot read %s: %s", file.getName(),
+                        excp.getMessage());
+        }
+    }
+}
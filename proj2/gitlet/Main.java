@@ -1,24 +1,328 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author TODO
  */
 public class Main {
 
+    /** Marker written after the output of each command in daemon
+     *  mode. */
+    private static final String END_OF_OUTPUT = "\0";
+    /** Size of the buffer of the standard output. */
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND1> <OPERAND2> ... 
+     *  <COMMAND> <OPERAND1> <OPERAND2> ...
+     *  or: java gitlet.Main --batch [SCRIPT]
+     *  or: java gitlet.Main --daemon
+     *  The second form runs the commands in the file SCRIPT, or on the
+     *  standard input, one per line, in this one JVM.  Operands are split
+     *  and quoted as by a shell, and blank lines and lines starting with
+     *  '#' are skipped.  The output of each command is exactly what it
+     *  would print if run alone.  The third form reads commands from the
+     *  standard input in the same way, but runs every line and follows the
+     *  output of each command with a line holding a single NUL character,
+     *  so that a driver such as the tester can tell where it ends.  Object
+     *  caches stay warm from one command to the next.
+     *  If the environment variable GITLET_STATS is set, the hit and miss
+     *  counts of the object caches are printed on the standard error
+     *  afterwards.
+     *  All output goes through one large buffer that is only flushed when
+     *  full, at the end of each command in daemon mode, and at exit,
+     *  rather than at every line as System.out normally is.
      */
     public static void main(String[] args) {
-        // TODO: what if args is empty?
+        System.setOut(new PrintStream(new BufferedOutputStream(
+            new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE),
+            false));
+        try {
+            if (args.length > 0 && (args[0].equals("--batch")
+                                    || args[0].equals("--daemon"))) {
+                runScript(args);
+            } else {
+                runAndReport(args);
+            }
+        } finally {
+            System.out.flush();
+        }
+        if (System.getenv("GITLET_STATS") != null) {
+            printCacheStats("commits", Commit.CACHE);
+            printCacheStats("blobs", ObjectStore.BLOBS);
+        }
+        System.exit(0);
+    }
+
+    /** Execute the command given by ARGS, throwing a GitletException
+     *  describing any error. */
+    static void run(String[] args) {
+        if (args.length == 0) {
+            throw error("Please enter a command.");
+        }
         String firstArg = args[0];
-        switch(firstArg) {
+        if (!firstArg.equals("init")) {
+            Repository.checkInitialized();
+        }
+        switch (firstArg) {
             case "init":
-                // TODO: handle the `init` command
+                validateNumArgs(args, 1);
+                Repository.init();
                 break;
             case "add":
-                // TODO: handle the `add [filename]` command
+                if (args.length < 2) {
+                    throw error("Incorrect operands.");
+                }
+                Repository.add(Arrays.copyOfRange(args, 1, args.length));
+                break;
+            case "commit":
+                validateNumArgs(args, 2);
+                Repository.commit(args[1]);
+                break;
+            case "rm":
+                validateNumArgs(args, 2);
+                Repository.rm(args[1]);
+                break;
+            case "status":
+                validateNumArgs(args, 1);
+                Repository.status();
+                break;
+            case "log":
+                log(args);
+                break;
+            case "global-log":
+                validateNumArgs(args, 1);
+                Repository.globalLog();
+                break;
+            case "find":
+                validateNumArgs(args, 2);
+                Repository.find(args[1]);
+                break;
+            case "diff":
+                if (args.length > 3) {
+                    throw error("Incorrect operands.");
+                }
+                Repository.diff(args.length > 1 ? args[1] : null,
+                                args.length > 2 ? args[2] : null);
+                break;
+            case "checkout":
+                if (args.length == 3 && args[1].equals("--")) {
+                    Repository.checkoutFile(args[2]);
+                } else if (args.length == 4 && args[2].equals("--")) {
+                    Repository.checkoutFile(args[1], args[3]);
+                } else if (args.length == 2) {
+                    Repository.checkoutBranch(args[1]);
+                } else {
+                    throw error("Incorrect operands.");
+                }
+                break;
+            case "branch":
+                validateNumArgs(args, 2);
+                Repository.branch(args[1]);
+                break;
+            case "rm-branch":
+                validateNumArgs(args, 2);
+                Repository.rmBranch(args[1]);
+                break;
+            case "reset":
+                validateNumArgs(args, 2);
+                Repository.reset(args[1]);
+                break;
+            case "merge":
+                validateNumArgs(args, 2);
+                Repository.merge(args[1]);
+                break;
+            case "add-remote":
+                validateNumArgs(args, 3);
+                Repository.addRemote(args[1], args[2]);
+                break;
+            case "rm-remote":
+                validateNumArgs(args, 2);
+                Repository.rmRemote(args[1]);
+                break;
+            case "fetch":
+                validateNumArgs(args, 3);
+                Repository.fetch(args[1], args[2]);
+                break;
+            case "push":
+                validateNumArgs(args, 3);
+                Repository.push(args[1], args[2]);
+                break;
+            case "pull":
+                validateNumArgs(args, 3);
+                Repository.pull(args[1], args[2]);
+                break;
+            case "upload-pack":
+                validateNumArgs(args, 1);
+                Transfer.uploadPack();
                 break;
-            // TODO: FILL THE REST IN
+            case "receive-pack":
+                validateNumArgs(args, 1);
+                Transfer.receivePack();
+                break;
+            case "repack":
+                validateNumArgs(args, 1);
+                Repository.repack();
+                break;
+            case "gc":
+                validateNumArgs(args, 1);
+                Repository.gc();
+                break;
+            case "migrate-objects":
+                validateNumArgs(args, 1);
+                Repository.migrateObjects();
+                break;
+            default:
+                throw error("No command with that name exists.");
+        }
+    }
+
+    /** Execute the log command given by ARGS:
+     *      log [-n COUNT | --max-count=COUNT] [--skip=SKIP]
+     *  which prints at most COUNT entries after skipping the first SKIP,
+     *  so that a page of history can be shown without walking the rest of
+     *  it. */
+    private static void log(String[] args) {
+        int maxCount = Integer.MAX_VALUE, skip = 0;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+                i += 1;
+                maxCount = parseCount(args[i]);
+            } else if (args[i].startsWith("--max-count=")) {
+                maxCount = parseCount(args[i].substring(12));
+            } else if (args[i].startsWith("--skip=")) {
+                skip = parseCount(args[i].substring(7));
+            } else {
+                throw error("Incorrect operands.");
+            }
+        }
+        Repository.log(skip, maxCount);
+    }
+
+    /** Returns the non-negative count written as S. */
+    private static int parseCount(String s) {
+        try {
+            int result = Integer.parseInt(s);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("Incorrect operands.");
+    }
+
+    /** Execute the command given by ARGS, printing the message of any
+     *  error. */
+    private static void runAndReport(String[] args) {
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            message(excp.getMessage());
+        }
+    }
+
+    /** Run the commands of a script as described for main, given the
+     *  command-line arguments ARGS that select the mode. */
+    private static void runScript(String[] args) {
+        boolean daemon = args[0].equals("--daemon");
+        if (args.length > (daemon ? 1 : 2)) {
+            message("Incorrect operands.");
+            return;
+        }
+        try (BufferedReader script = args.length == 2
+                 ? Files.newBufferedReader(Paths.get(args[1]))
+                 : new BufferedReader(
+                     new InputStreamReader(System.in,
+                                           StandardCharsets.UTF_8))) {
+            for (String line = script.readLine(); line != null;
+                 line = script.readLine()) {
+                if (daemon) {
+                    runAndReport(parseCommand(line));
+                    System.out.println(END_OF_OUTPUT);
+                    System.out.flush();
+                } else if (!line.isBlank() && !line.strip().startsWith("#")) {
+                    runAndReport(parseCommand(line));
+                }
+            }
+        } catch (IOException excp) {
+            message("Cannot read script: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns the words of LINE, split at white space as by a shell.
+     *  Characters between single quotes are taken literally; elsewhere a
+     *  backslash quotes the next character, and white space between double
+     *  quotes does not split words.  A missing closing quote is taken to
+     *  be at the end of LINE. */
+    static String[] parseCommand(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\\' && i + 1 < line.length()) {
+                i += 1;
+                word.append(line.charAt(i));
+                inWord = true;
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /** Print the counters of CACHE, which holds KIND, on the standard
+     *  error. */
+    private static void printCacheStats(String kind, ObjectCache<?> cache) {
+        System.err.printf("%s cache: %d hits, %d misses, %d bytes%n", kind,
+                          cache.hits(), cache.misses(), cache.size());
+    }
+
+    /** Throw a GitletException unless ARGS has exactly N elements. */
+    private static void validateNumArgs(String[] args, int n) {
+        if (args.length != n) {
+            throw error("Incorrect operands.");
         }
     }
 }
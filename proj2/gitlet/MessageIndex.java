@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** An inverted index from the words of commit messages to the records of
+ *  the CommitCatalog whose messages contain them.
+ *
+ *  A word is a maximal run of letters and digits, compared without regard
+ *  to case, and is represented by a 64-bit hash.  The file
+ *  .gitlet/message-index is a header (magic, version, number of catalog
+ *  records covered, number of entries N) followed by N fixed-width
+ *  entries, sorted by word hash and then by record:
+ *
+ *       8 bytes   hash of a word
+ *       4 bytes   catalog record of a commit whose message contains it
+ *
+ *  so the records holding a word are found with two binary searches over
+ *  the memory-mapped file.  Two words may share a hash, so callers must
+ *  check the messages of the records they get.
+ *
+ *  As with CommitIndex, the index covers a prefix of the catalog; up to
+ *  MAX_UNINDEXED newer records are searched by reading their messages,
+ *  and once there are more the index is rebuilt by merging them in.
+ */
+class MessageIndex {
+
+    /** File holding the index. */
+    static final File INDEX_FILE = join(GITLET_DIR, "message-index");
+    /** Most catalog records that may be missing from the index. */
+    static final int MAX_UNINDEXED = 1024;
+    /** Magic number at the start of INDEX_FILE. */
+    private static final int MAGIC = 0x474c4d49;
+    /** Format version of INDEX_FILE. */
+    private static final int VERSION = 1;
+    /** Size of the header of INDEX_FILE. */
+    private static final int HEADER_SIZE = 16;
+    /** Size of one entry. */
+    private static final int ENTRY_SIZE = 8 + 4;
+    /** Offset basis of the 64-bit FNV-1a hash. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    /** Prime of the 64-bit FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** The mapped contents of the index file, or null if it is empty. */
+    private final ByteBuffer index;
+    /** The number of catalog records covered. */
+    private final int covered;
+    /** The number of entries. */
+    private final int count;
+
+    /** An index whose contents are INDEX, covering COVERED catalog records
+     *  with COUNT entries. */
+    private MessageIndex(ByteBuffer index, int covered, int count) {
+        this.index = index;
+        this.covered = covered;
+        this.count = count;
+    }
+
+    /** Returns the saved index, or an empty one if there is none or if it
+     *  covers more than the CATALOGSIZE records of the catalog. */
+    static MessageIndex load(int catalogSize) {
+        if (!INDEX_FILE.isFile()) {
+            return new MessageIndex(null, 0, 0);
+        }
+        MappedByteBuffer index;
+        try (FileChannel chan = FileChannel.open(INDEX_FILE.toPath())) {
+            index = chan.map(FileChannel.MapMode.READ_ONLY, 0, chan.size());
+        } catch (IOException excp) {
+            throw error("Cannot read message index: %s", excp.getMessage());
+        }
+        if (index.limit() < HEADER_SIZE || index.getInt(0) != MAGIC
+            || index.getInt(4) != VERSION
+            || index.limit() < HEADER_SIZE
+                               + (long) index.getInt(12) * ENTRY_SIZE) {
+            throw error("Corrupt message index.");
+        }
+        if (index.getInt(8) > catalogSize) {
+            return new MessageIndex(null, 0, 0);
+        }
+        return new MessageIndex(index, index.getInt(8), index.getInt(12));
+    }
+
+    /** Returns the number of catalog records I cover, which are the first
+     *  covered() records of the catalog. */
+    int covered() {
+        return covered;
+    }
+
+    /** Returns the number of covered records whose messages contain a
+     *  word with hash TOKEN. */
+    int count(long token) {
+        return upperBound(token) - lowerBound(token);
+    }
+
+    /** Returns the covered records whose messages contain a word with hash
+     *  TOKEN, in increasing order. */
+    int[] rows(long token) {
+        int lo = lowerBound(token), hi = upperBound(token);
+        int[] result = new int[hi - lo];
+        for (int k = lo; k < hi; k += 1) {
+            result[k - lo] = index.getInt(entryPosition(k) + 8);
+        }
+        return result;
+    }
+
+    /** Returns the distinct hashes of the words in MESSAGE. */
+    static long[] tokens(String message) {
+        long[] result = new long[message.length()];
+        int n = 0;
+        long hash = FNV_BASIS;
+        boolean inWord = false;
+        for (int i = 0; i <= message.length(); i += 1) {
+            char c = i < message.length() ? message.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+                inWord = true;
+            } else if (inWord) {
+                result[n] = hash;
+                n += 1;
+                hash = FNV_BASIS;
+                inWord = false;
+            }
+        }
+        return Arrays.stream(result, 0, n).distinct().toArray();
+    }
+
+    /** Rewrite the index file to cover all records of CATALOG, merging the
+     *  words of the records that OLD does not cover into its entries, and
+     *  return the new index. */
+    static MessageIndex rebuild(CommitCatalog catalog, MessageIndex old) {
+        int total = catalog.size();
+        long[][] added = new long[0][];
+        int numAdded = 0;
+        for (int k = old.covered; k < total; k += 1) {
+            long[] tokens = tokens(catalog.message(k));
+            if (numAdded + tokens.length > added.length) {
+                added = Arrays.copyOf(added, 2 * (numAdded + tokens.length));
+            }
+            for (long token : tokens) {
+                added[numAdded] = new long[] { token, k };
+                numAdded += 1;
+            }
+        }
+        Arrays.sort(added, 0, numAdded, (x, y) -> {
+            int c = Long.compare(x[0], y[0]);
+            return c != 0 ? c : Long.compare(x[1], y[1]);
+        });
+
+        int entries = old.count + numAdded;
+        ByteBuffer result =
+            ByteBuffer.allocate(HEADER_SIZE + entries * ENTRY_SIZE);
+        result.putInt(MAGIC).putInt(VERSION).putInt(total).putInt(entries);
+        int k, i;
+        k = i = 0;
+        while (k < old.count || i < numAdded) {
+            if (i == numAdded
+                || (k < old.count && old.token(k) <= added[i][0])) {
+                result.putLong(old.token(k));
+                result.putInt(old.index.getInt(entryPosition(k) + 8));
+                k += 1;
+            } else {
+                result.putLong(added[i][0]).putInt((int) added[i][1]);
+                i += 1;
+            }
+        }
+        result.flip();
+
+        File tmp = join(GITLET_DIR, "message-index.tmp");
+        try (FileChannel out =
+                 FileChannel.open(tmp.toPath(),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+            while (result.hasRemaining()) {
+                out.write(result);
+            }
+            out.force(true);
+            Files.move(tmp.toPath(), INDEX_FILE.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Cannot write message index: %s", excp.getMessage());
+        }
+        return new MessageIndex(result.rewind(), total, entries);
+    }
+
+    /** Returns the number of entries whose hashes are less than TOKEN. */
+    private int lowerBound(long token) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (token(mid) < token) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the number of entries whose hashes are at most TOKEN. */
+    private int upperBound(long token) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (token(mid) <= token) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the word hash of entry K. */
+    private long token(int k) {
+        return index.getLong(entryPosition(k));
+    }
+
+    /** Returns the position of entry K in the index file. */
+    private static int entryPosition(int k) {
+        return HEADER_SIZE + k * ENTRY_SIZE;
+    }
+}
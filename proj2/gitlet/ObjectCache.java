@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.ToLongFunction;
+
+/** A cache of objects read by this process, keyed by object id.
+ *
+ *  The cache holds values whose estimated sizes add up to at most a fixed
+ *  budget, evicting the least recently used values first, and counts the
+ *  lookups that found a value (hits) and those that did not (misses).
+ *  Cached values are shared, so they must not be modified, except that a
+ *  value that grows (such as a commit whose file table is loaded later)
+ *  may be put again to have its size estimated again.  Nothing is kept
+ *  between runs of Gitlet, but in batch mode (see Main) the cache serves
+ *  all the commands of a script; stored objects never change, so entries
+ *  stay valid from one command to the next.  The one exception is gc,
+ *  which deletes objects and so empties every cache afterwards.
+ */
+class ObjectCache<T> {
+
+    /** The cached values, least recently used first. */
+    private final LinkedHashMap<String, T> values =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** The estimated sizes of the values, as of when they were put. */
+    private final HashMap<String, Long> sizes = new HashMap<>();
+    /** Estimates the size in bytes of a value. */
+    private final ToLongFunction<T> sizer;
+    /** Limit on the total estimated size of the values. */
+    private final long budget;
+    /** Total estimated size of the values. */
+    private long size;
+    /** Number of lookups that found a value. */
+    private long hits;
+    /** Number of lookups that did not. */
+    private long misses;
+
+    /** An empty cache holding values whose sizes, as estimated by SIZER,
+     *  add up to at most BUDGET bytes. */
+    ObjectCache(long budget, ToLongFunction<T> sizer) {
+        this.budget = budget;
+        this.sizer = sizer;
+    }
+
+    /** Returns the value cached for ID, or null if there is none. */
+    synchronized T get(String id) {
+        T result = values.get(id);
+        if (result == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return result;
+    }
+
+    /** Cache VALUE under ID, evicting the least recently used values as
+     *  needed to stay within budget.  A value larger than the whole
+     *  budget is not cached. */
+    synchronized void put(String id, T value) {
+        long valueSize = sizer.applyAsLong(value);
+        if (valueSize > budget) {
+            Long old = sizes.remove(id);
+            if (old != null) {
+                values.remove(id);
+                size -= old;
+            }
+            return;
+        }
+        values.put(id, value);
+        Long old = sizes.put(id, valueSize);
+        if (old != null) {
+            size -= old;
+        }
+        size += valueSize;
+        Iterator<String> eldest = values.keySet().iterator();
+        while (size > budget && eldest.hasNext()) {
+            size -= sizes.remove(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /** Remove every value, keeping the counters. */
+    synchronized void clear() {
+        values.clear();
+        sizes.clear();
+        size = 0;
+    }
+
+    /** Returns the number of lookups that found a value. */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /** Returns the number of lookups that found nothing. */
+    synchronized long misses() {
+        return misses;
+    }
+
+    /** Returns the total estimated size of the cached values. */
+    synchronized long size() {
+        return size;
+    }
+}
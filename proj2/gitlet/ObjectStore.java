@@ -0,0 +1,737 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** The content-addressed object store of a Gitlet repository.
+ *
+ *  Every blob, tree and commit is stored as a record: a single type byte
+ *  (BLOB, TREE or COMMIT) followed by its contents.  The id of a blob is
+ *  the SHA-1 hash of its contents, and that of a tree or commit is the
+ *  hash of its whole record, type byte included.  Since no two types
+ *  share an id, a file whose bytes happen to be the encoding of a tree or
+ *  commit is still stored as a blob of its own.  (Older versions of
+ *  Gitlet hashed trees and commits without the type byte; those keep the
+ *  ids they have.)  A blob may instead be stored as a DELTA record:
+ *
+ *      1 byte     DELTA
+ *      1 byte     depth of the delta chain ending in this record
+ *      20 bytes   raw id of the base blob
+ *      rest       a Delta of the blob against its base
+ *
+ *  Chains are at most MAX_DEPTH deltas long, and a delta is only kept when
+ *  it is much smaller than the blob, so both the space a new version takes
+ *  and the bytes written to store it scale with the size of the change.
+ *
+ *  A blob of at least CHUNK_THRESHOLD bytes is instead split into chunks
+ *  by Chunker, each stored as a blob of its own (a delta against the
+ *  chunk at the same offset of the previous version, if that is small
+ *  enough), and is stored as a CHUNKED record listing them:
+ *
+ *      1 byte     CHUNKED
+ *      N entries  each the raw id of a chunk and its length in 4 bytes
+ *
+ *  Cut points depend only on the contents, so an unchanged stretch of a
+ *  file yields the same chunks in every version, and in every other file
+ *  that contains it, and they are stored once.  Checking out a chunked
+ *  blob copies its chunks into the file one after the other, without
+ *  putting the whole blob in memory.
+ *
+ *  Blobs that have been read, and rebuilt if delta-encoded, are kept in
+ *  the LRU cache BLOBS for the rest of the command, so reading a blob
+ *  again, or reading the next version along the same delta chain, costs
+ *  no I/O.
+ *
+ *  Newly written objects are kept loose, one file per object, which keeps
+ *  each write cheap.  As in Git, the object with id ID is in the file
+ *  .gitlet/objects/ID[0..1]/ID[2..39], so no directory holds more than
+ *  1/256 of the loose objects.  Repositories made before this layout kept
+ *  every object directly in .gitlet/objects; such files are still found,
+ *  and the migrate-objects command moves them into their shards.  Loose
+ *  objects are enumerated one shard at a time through a DirectoryStream,
+ *  never by listing and sorting the whole store.  The repack command folds
+ *  the loose objects into the append-only pack in .gitlet/pack (see
+ *  PackFile), after which they are found by a binary search of the pack
+ *  index instead of by a directory lookup.
+ */
+class ObjectStore {
+
+    /** Type byte of a blob record. */
+    static final byte BLOB = 1;
+    /** Type byte of a commit record. */
+    static final byte COMMIT = 2;
+    /** Type byte of a delta-encoded blob record. */
+    private static final byte DELTA = 3;
+    /** Type byte of a tree record. */
+    static final byte TREE = 4;
+    /** Type byte of a blob record that lists the chunks of the blob. */
+    private static final byte CHUNKED = 5;
+    /** Size of each entry of a CHUNKED record. */
+    private static final int CHUNK_ENTRY = PackFile.ID_SIZE + 4;
+    /** Blobs at least this long are stored as chunks. */
+    static final int CHUNK_THRESHOLD = 1 << 20;
+    /** Size of the header of a DELTA record. */
+    private static final int DELTA_HEADER = 2 + PackFile.ID_SIZE;
+    /** Longest allowed chain of DELTA records. */
+    static final int MAX_DEPTH = 10;
+    /** A delta is stored only if it is at most this fraction of the size
+     *  of the blob it encodes. */
+    private static final double MAX_DELTA_RATIO = 0.5;
+    /** Number of shard directories of loose objects. */
+    private static final int SHARDS = 256;
+    /** Limit on the total size of the blobs in BLOBS. */
+    private static final long CACHE_LIMIT = 32L << 20;
+
+    /** Directory holding loose objects. */
+    static final File OBJECTS_DIR = join(GITLET_DIR, "objects");
+    /** Directory holding the pack and its index. */
+    static final File PACK_DIR = join(GITLET_DIR, "pack");
+    /** The pack file. */
+    static final File PACK_FILE = join(PACK_DIR, "objects.pack");
+    /** The index of PACK_FILE. */
+    static final File PACK_INDEX = join(PACK_DIR, "objects.idx");
+
+    /** The pack of this repository, or null if not yet opened. */
+    private static PackFile pack;
+    /** Contents of recently read blobs. */
+    static final ObjectCache<byte[]> BLOBS =
+        new ObjectCache<>(CACHE_LIMIT, contents -> contents.length);
+
+    /** Create the directories of an empty object store. */
+    static void init() {
+        OBJECTS_DIR.mkdir();
+        PACK_DIR.mkdir();
+    }
+
+    /** Store CONTENTS as an object of type TYPE, which is TREE or COMMIT,
+     *  if it is not already present, and return its id: the hash of TYPE
+     *  followed by CONTENTS. */
+    static String write(byte type, byte[] contents) {
+        String id = sha1(new byte[] { type }, contents);
+        if (!contains(id)) {
+            writeLoose(id, new byte[] { type }, contents);
+        }
+        return id;
+    }
+
+    /** Store CONTENTS as a blob, if it is not already present, and return
+     *  its id.  A blob of at least CHUNK_THRESHOLD bytes is stored as
+     *  chunks.  Otherwise, if BASE is not null, it is the id of an earlier
+     *  version of the same file, and the blob is stored as a delta against
+     *  it when that saves enough space. */
+    static String writeBlob(byte[] contents, String base) {
+        String id = sha1(contents);
+        if (contains(id)) {
+            return id;
+        }
+        if (contents.length >= CHUNK_THRESHOLD) {
+            try {
+                return writeChunked(Channels.newChannel(
+                    new ByteArrayInputStream(contents)), base);
+            } catch (IOException excp) {
+                throw error("Cannot store blob %s: %s", id,
+                            excp.getMessage());
+            }
+        }
+        byte[] baseRecord = base == null ? null : readRecord(base);
+        if (baseRecord != null && depth(baseRecord) < MAX_DEPTH) {
+            byte[] delta = Delta.create(read(base, BLOB), contents);
+            if (delta.length <= contents.length * MAX_DELTA_RATIO) {
+                byte[] header = new byte[DELTA_HEADER];
+                header[0] = DELTA;
+                header[1] = (byte) (depth(baseRecord) + 1);
+                System.arraycopy(fromHex(base), 0, header, 2,
+                                 PackFile.ID_SIZE);
+                writeLoose(id, header, delta);
+                return id;
+            }
+        }
+        writeLoose(id, new byte[] { BLOB }, contents);
+        return id;
+    }
+
+    /** Store the contents of FILE as a blob, if it is not already present,
+     *  and return its id, as writeBlob(readContents(FILE), BASE) does.  A
+     *  file of at least CHUNK_THRESHOLD bytes is read once, front to back,
+     *  and each chunk is stored as it is cut, so it is never all in
+     *  memory. */
+    static String writeBlob(File file, String base) {
+        if (file.length() < CHUNK_THRESHOLD) {
+            return writeBlob(readContents(file), base);
+        }
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            return writeChunked(in, base);
+        } catch (IOException excp) {
+            throw error("Cannot read %s: %s", file.getName(),
+                        excp.getMessage());
+        }
+    }
+
+    /** Store the contents read from IN as a CHUNKED record, storing each
+     *  of its chunks that is not already present as it is cut, and return
+     *  its id.  If BASE is the id of a chunked earlier version of the
+     *  same file, each new chunk is stored as a delta against the chunk
+     *  of BASE at the same offset when that saves enough space, so a
+     *  change inside a chunk costs about the size of the change. */
+    private static String writeChunked(ReadableByteChannel in, String base)
+        throws IOException {
+        byte[] baseRecord = base == null ? null : chunkedRecord(base);
+        ByteBuffer baseEntries =
+            baseRecord == null ? null : ByteBuffer.wrap(baseRecord);
+        Chunker chunker = new Chunker(in);
+        MessageDigest md = newDigester();
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        record.write(CHUNKED);
+        ByteBuffer entry = ByteBuffer.allocate(CHUNK_ENTRY);
+        long start = 0, baseStart = 0;
+        int q = 1;
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            String old = null;
+            if (baseRecord != null) {
+                while (q < baseRecord.length && baseStart
+                       + baseEntries.getInt(q + PackFile.ID_SIZE) <= start) {
+                    baseStart += baseEntries.getInt(q + PackFile.ID_SIZE);
+                    q += CHUNK_ENTRY;
+                }
+                old = q < baseRecord.length ? toHex(baseRecord, q) : null;
+            }
+            md.update(chunk);
+            String chunkId = writeBlob(chunk, old);
+            entry.clear();
+            entry.put(fromHex(chunkId)).putInt(chunk.length);
+            record.write(entry.array());
+            start += chunk.length;
+        }
+        String id = toHex(md.digest(), 0);
+        if (!contains(id)) {
+            writeLoose(id, record.toByteArray());
+        }
+        return id;
+    }
+
+    /** Returns the contents of the object of type TYPE whose id is ID, or
+     *  null if there is no such object.  Blobs are returned from and
+     *  added to BLOBS, and so must not be modified. */
+    static byte[] read(String id, byte type) {
+        byte[] result = type == BLOB ? BLOBS.get(id) : null;
+        if (result != null) {
+            return result;
+        }
+        byte[] record = readRecord(id);
+        if (record == null || record.length == 0) {
+            return null;
+        } else if (record[0] == DELTA && type == BLOB) {
+            result = rebuild(record);
+        } else if (record[0] == CHUNKED && type == BLOB) {
+            result = assemble(record);
+        } else if (record[0] != type) {
+            return null;
+        } else {
+            result = Arrays.copyOfRange(record, 1, record.length);
+        }
+        if (type == BLOB) {
+            BLOBS.put(id, result);
+        }
+        return result;
+    }
+
+    /** Write the contents of the blob with id ID to FILE, replacing
+     *  anything there, and return true, or return false if there is no
+     *  such blob.  A blob stored whole, loose or packed, is copied from
+     *  the store with FileChannel.transferTo, which lets the kernel move
+     *  the bytes without copying them into the Java heap; a chunked blob
+     *  is copied that way one chunk at a time.  Cached and delta-encoded
+     *  blobs are written from memory. */
+    static boolean copyBlob(String id, File file) {
+        byte[] contents = BLOBS.get(id);
+        if (contents == null) {
+            byte[] type = readRecord(id, 1);
+            if (type == null || type.length == 0) {
+                return false;
+            } else if (type[0] == BLOB || type[0] == CHUNKED) {
+                return transferBlob(id, file);
+            }
+            contents = read(id, BLOB);
+            if (contents == null) {
+                return false;
+            }
+        }
+        writeContents(file, (Object) contents);
+        return true;
+    }
+
+    /** Copy the contents of the blob ID, stored whole or as chunks, loose
+     *  or packed, to FILE with FileChannel.transferTo, and return true.
+     *  Chunks that are not stored whole are written from memory. */
+    private static boolean transferBlob(String id, File file) {
+        try (FileChannel out =
+                 FileChannel.open(file.toPath(),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+            if (transferWhole(id, out)) {
+                return true;
+            }
+            for (String chunk : chunks(id)) {
+                if (!transferWhole(chunk, out)) {
+                    ByteBuffer contents = ByteBuffer.wrap(readChunk(chunk));
+                    while (contents.hasRemaining()) {
+                        out.write(contents);
+                    }
+                }
+            }
+            return true;
+        } catch (IOException excp) {
+            throw error("Cannot write %s: %s", file.getName(),
+                        excp.getMessage());
+        }
+    }
+
+    /** Copy the contents of the blob ID to the end of OUT with
+     *  FileChannel.transferTo and return true if it is stored whole, loose
+     *  or packed, and otherwise copy nothing and return false. */
+    private static boolean transferWhole(String id, FileChannel out)
+        throws IOException {
+        byte[] type = readRecord(id, 1);
+        if (type == null || type.length == 0 || type[0] != BLOB) {
+            return false;
+        }
+        File loose = looseFile(id);
+        if (loose.isFile()) {
+            try (FileChannel in = FileChannel.open(loose.toPath())) {
+                PackFile.transferFully(in, 1, in.size() - 1, out);
+            }
+            return true;
+        }
+        return pack().transferTo(id, 1, out);
+    }
+
+    /** Returns the first LIMIT bytes of the contents of the object of type
+     *  TYPE whose id is ID, or all of them if there are fewer, or null if
+     *  there is no such object.  Only about LIMIT bytes are read.  TYPE
+     *  must not be BLOB, since blobs may be delta-encoded. */
+    static byte[] readPrefix(String id, byte type, int limit) {
+        byte[] record = readRecord(id, limit + 1);
+        if (record == null || record.length == 0 || record[0] != type) {
+            return null;
+        }
+        return Arrays.copyOfRange(record, 1, record.length);
+    }
+
+    /** Returns the blob whose stored form is the DELTA record RECORD,
+     *  rebuilt by applying the chain of deltas ending in RECORD. */
+    private static byte[] rebuild(byte[] record) {
+        String base = toHex(record, 2);
+        byte[] baseContents = read(base, BLOB);
+        if (baseContents == null) {
+            throw error("Missing delta base %s.", base);
+        }
+        return Delta.apply(baseContents,
+                           Arrays.copyOfRange(record, DELTA_HEADER,
+                                              record.length));
+    }
+
+    /** Returns the blob whose stored form is the CHUNKED record RECORD,
+     *  its chunks put together. */
+    private static byte[] assemble(byte[] record) {
+        ByteBuffer entries = ByteBuffer.wrap(record);
+        long size = 0;
+        for (int p = 1 + PackFile.ID_SIZE; p < record.length;
+             p += CHUNK_ENTRY) {
+            size += entries.getInt(p);
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw error("Blob too large to read into memory.");
+        }
+        ByteBuffer result = ByteBuffer.allocate((int) size);
+        for (int p = 1; p < record.length; p += CHUNK_ENTRY) {
+            result.put(readChunk(toHex(record, p)));
+        }
+        return result.array();
+    }
+
+    /** Returns the contents of the chunk ID, which are not cached. */
+    private static byte[] readChunk(String id) {
+        byte[] record = readRecord(id);
+        if (record == null || record.length == 0) {
+            throw error("Missing chunk %s.", id);
+        } else if (record[0] == BLOB) {
+            return Arrays.copyOfRange(record, 1, record.length);
+        }
+        return read(id, BLOB);
+    }
+
+    /** Returns the ids of the chunks of the blob with id ID, in order, or
+     *  an empty list if it is not stored as chunks. */
+    static List<String> chunks(String id) {
+        byte[] record = chunkedRecord(id);
+        if (record == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(record.length / CHUNK_ENTRY);
+        for (int p = 1; p < record.length; p += CHUNK_ENTRY) {
+            result.add(toHex(record, p));
+        }
+        return result;
+    }
+
+    /** Returns the stored record for ID if it is a CHUNKED record, or null
+     *  if it is not.  Only its type is read if it is not. */
+    private static byte[] chunkedRecord(String id) {
+        return isChunked(id) ? readRecord(id) : null;
+    }
+
+    /** Returns true iff the blob ID is stored as chunks.  Only its type is
+     *  read. */
+    static boolean isChunked(String id) {
+        byte[] type = readRecord(id, 1);
+        return type != null && type.length > 0 && type[0] == CHUNKED;
+    }
+
+    /** Returns the ids of the blobs that the stored form of the blob ID is
+     *  built from: the base of a delta, or the chunks of a chunked blob.
+     *  The list is empty if it is stored whole or not at all.  Only the
+     *  header of a delta is read. */
+    static List<String> parts(String id) {
+        byte[] header = readRecord(id, DELTA_HEADER);
+        if (header == null || header.length == 0) {
+            return Collections.emptyList();
+        } else if (header[0] == DELTA && header.length == DELTA_HEADER) {
+            return List.of(toHex(header, 2));
+        }
+        return header[0] == CHUNKED ? chunks(id) : Collections.emptyList();
+    }
+
+    /** Returns the stored record for ID, type byte included, as it is to be
+     *  sent to another repository, or null if there is none.  A blob
+     *  stored as a delta is sent as such only if HASBASE holds for the id
+     *  of its base, which the other repository must then have; otherwise
+     *  it is rebuilt and sent whole.  A chunked blob is sent as its list
+     *  of chunks, which must be sent first. */
+    static byte[] exportRecord(String id, Predicate<String> hasBase) {
+        byte[] record = readRecord(id);
+        if (record == null || record.length == 0 || record[0] != DELTA
+            || hasBase.test(toHex(record, 2))) {
+            return record;
+        }
+        byte[] contents = read(id, BLOB);
+        byte[] result = new byte[1 + contents.length];
+        result[0] = BLOB;
+        System.arraycopy(contents, 0, result, 1, contents.length);
+        return result;
+    }
+
+    /** Store RECORD, received from another repository, as the loose object
+     *  ID, unless it is already present.  Throws a GitletException if
+     *  RECORD is not the object ID or, if it is a delta, if its base is
+     *  not stored.  A delta is checked by applying it to its base, and
+     *  its depth is that of this repository's chain ending in the base,
+     *  not the sender's; it is stored whole if that chain is already
+     *  MAX_DEPTH long.  A chunked blob is checked by hashing its chunks
+     *  one at a time. */
+    static void importRecord(String id, byte[] record) {
+        if (contains(id)) {
+            return;
+        }
+        if (record.length > 0 && record[0] == DELTA) {
+            importDelta(id, record);
+            return;
+        } else if (record.length > 0 && record[0] == CHUNKED) {
+            if ((record.length - 1) % CHUNK_ENTRY != 0
+                || !id.equals(chunkedHash(id, record))) {
+                throw error("Corrupt object %s.", id);
+            }
+        } else if (record.length == 0 || !id.equals(recordHash(id, record))) {
+            throw error("Corrupt object %s.", id);
+        }
+        writeLoose(id, record);
+    }
+
+    /** Returns the id of the object whose whole record is RECORD: the
+     *  hash of its contents if it is a BLOB, and otherwise that of the
+     *  whole record or, for a tree or commit made by an older version of
+     *  Gitlet, of its contents, whichever is ID. */
+    private static String recordHash(String id, byte[] record) {
+        byte[] contents = Arrays.copyOfRange(record, 1, record.length);
+        if (record[0] == BLOB) {
+            return sha1(contents);
+        }
+        String tagged = sha1(record);
+        return tagged.equals(id) ? tagged : sha1(contents);
+    }
+
+    /** Store the DELTA record RECORD, received from another repository,
+     *  as the loose object ID, as described for importRecord. */
+    private static void importDelta(String id, byte[] record) {
+        byte[] baseRecord = record.length < DELTA_HEADER
+            ? null : readRecord(toHex(record, 2));
+        if (baseRecord == null || baseRecord.length == 0) {
+            throw error("Missing delta base for %s.", id);
+        }
+        byte[] contents = rebuild(record);
+        if (!id.equals(sha1(contents))) {
+            throw error("Corrupt object %s.", id);
+        }
+        if (depth(baseRecord) >= MAX_DEPTH) {
+            writeLoose(id, new byte[] { BLOB }, contents);
+        } else {
+            byte[] local = record.clone();
+            local[1] = (byte) (depth(baseRecord) + 1);
+            writeLoose(id, local);
+        }
+    }
+
+    /** Returns the id of the blob ID whose stored form is the CHUNKED
+     *  record RECORD: the SHA-1 hash of its chunks, read one at a time, or
+     *  null if one has the wrong length. */
+    private static String chunkedHash(String id, byte[] record) {
+        MessageDigest md = newDigester();
+        ByteBuffer entries = ByteBuffer.wrap(record);
+        for (int p = 1; p < record.length; p += CHUNK_ENTRY) {
+            String chunk = toHex(record, p);
+            if (!contains(chunk)) {
+                throw error("Missing chunk %s of %s.", chunk, id);
+            }
+            byte[] contents = readChunk(chunk);
+            if (contents.length != entries.getInt(p + PackFile.ID_SIZE)) {
+                return null;
+            }
+            md.update(contents);
+        }
+        return toHex(md.digest(), 0);
+    }
+
+    /** Returns the length of the delta chain ending in RECORD: 0 if it is
+     *  not a DELTA record. */
+    private static int depth(byte[] record) {
+        return record[0] == DELTA ? record[1] : 0;
+    }
+
+    /** Returns true iff an object with id ID is stored. */
+    static boolean contains(String id) {
+        return isUid(id)
+            && (shardFile(id).isFile() || pack().contains(id)
+                || join(OBJECTS_DIR, id).isFile());
+    }
+
+    /** Move all loose objects into the pack.  Their files are copied
+     *  into it one at a time with transferTo, so none of them passes
+     *  through the Java heap; only their new index entries are kept. */
+    static void repack() {
+        List<String> ids = new ArrayList<>();
+        List<File> packed = new ArrayList<>();
+        forEachLoose(id -> {
+            if (!pack().contains(id)) {
+                ids.add(id);
+            }
+            packed.add(looseFile(id));
+        });
+        Collections.sort(ids);
+        List<File> files = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            files.add(looseFile(id));
+        }
+        if (!ids.isEmpty()) {
+            pack().append(ids, files);
+        }
+        for (File file : packed) {
+            file.delete();
+        }
+    }
+
+    /** Move every loose object stored directly in .gitlet/objects by an
+     *  older version of Gitlet into its shard directory, and return the
+     *  number moved.  Each move is a rename, so a migration that is
+     *  interrupted can simply be run again. */
+    static int migrate() {
+        int moved = 0;
+        try (DirectoryStream<Path> dir =
+                 Files.newDirectoryStream(OBJECTS_DIR.toPath(),
+                                          p -> isUid(p.getFileName()
+                                                     .toString()))) {
+            for (Path path : dir) {
+                File shard = shardFile(path.getFileName().toString());
+                shard.getParentFile().mkdir();
+                Files.move(path, shard.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+                moved += 1;
+            }
+        } catch (IOException excp) {
+            throw error("Cannot migrate objects: %s", excp.getMessage());
+        }
+        return moved;
+    }
+
+    /** Returns the ids of the packed objects, in increasing order. */
+    static List<String> packedIds() {
+        return pack().ids();
+    }
+
+    /** Delete the loose object ID, and return the number of bytes this
+     *  frees, or 0 if it is not stored loose. */
+    static long deleteLoose(String id) {
+        File file = looseFile(id);
+        long size = file.length();
+        return file.delete() ? size : 0;
+    }
+
+    /** Rewrite the pack to hold only the objects whose ids satisfy KEEP,
+     *  and return the number of bytes this frees. */
+    static long retainPacked(Predicate<String> keep) {
+        return pack().retain(keep);
+    }
+
+    /** Returns the ids of all stored commits, loose or packed.  This reads
+     *  the type of every object, so it is only for rebuilding indices. */
+    static TreeSet<String> commitIds() {
+        TreeSet<String> result = new TreeSet<>();
+        forEachLoose(id -> {
+            if (readPrefix(id, COMMIT, 0) != null) {
+                result.add(id);
+            }
+        });
+        for (String id : pack().ids()) {
+            if (readPrefix(id, COMMIT, 0) != null) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Call ACTION on the id of each loose object, one shard directory at
+     *  a time.  Objects in the same shard are visited in no particular
+     *  order. */
+    static void forEachLoose(Consumer<String> action) {
+        try {
+            forEachIn(OBJECTS_DIR, "", action);
+            for (int shard = 0; shard < SHARDS; shard += 1) {
+                String prefix = String.format("%02x", shard);
+                forEachIn(join(OBJECTS_DIR, prefix), prefix, action);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot list objects: %s", excp.getMessage());
+        }
+    }
+
+    /** Call ACTION on the id of each loose object whose file is in DIR,
+     *  where the ids of those objects are PREFIX followed by their file
+     *  names.  Does nothing if DIR does not exist. */
+    private static void forEachIn(File dir, String prefix,
+                                  Consumer<String> action)
+        throws IOException {
+        if (!dir.isDirectory()) {
+            return;
+        }
+        try (DirectoryStream<Path> entries =
+                 Files.newDirectoryStream(dir.toPath())) {
+            for (Path path : entries) {
+                String id = prefix + path.getFileName();
+                if (isUid(id) && Files.isRegularFile(path)) {
+                    action.accept(id);
+                }
+            }
+        }
+    }
+
+    /** Returns the stored record for ID, type byte included, or null if
+     *  there is none. */
+    private static byte[] readRecord(String id) {
+        return readRecord(id, Integer.MAX_VALUE);
+    }
+
+    /** Returns the first LIMIT bytes of the stored record for ID, type
+     *  byte included, or the whole record if it is shorter, or null if
+     *  there is none. */
+    private static byte[] readRecord(String id, int limit) {
+        if (!isUid(id)) {
+            return null;
+        }
+        File loose = shardFile(id);
+        if (!loose.isFile()) {
+            byte[] packed = pack().read(id, limit);
+            if (packed != null) {
+                return packed;
+            }
+            loose = join(OBJECTS_DIR, id);
+            if (!loose.isFile()) {
+                return null;
+            }
+        }
+        if (limit == Integer.MAX_VALUE) {
+            return readContents(loose);
+        }
+        try (InputStream in = new FileInputStream(loose)) {
+            return in.readNBytes(limit);
+        } catch (IOException excp) {
+            throw error("Cannot read object %s: %s", id, excp.getMessage());
+        }
+    }
+
+    /** Returns the file holding the loose object ID in its shard. */
+    private static File shardFile(String id) {
+        return join(OBJECTS_DIR, id.substring(0, 2), id.substring(2));
+    }
+
+    /** Returns the file holding the loose object ID, which is its shard
+     *  file unless an older version of Gitlet stored it directly in
+     *  OBJECTS_DIR. */
+    private static File looseFile(String id) {
+        File result = shardFile(id);
+        return result.isFile() ? result : join(OBJECTS_DIR, id);
+    }
+
+    /** Store the concatenation of PARTS as the loose object ID, creating
+     *  its shard directory if needed. */
+    private static void writeLoose(String id, byte[]... parts) {
+        File file = shardFile(id);
+        file.getParentFile().mkdir();
+        writeContents(file, (Object[]) parts);
+    }
+
+    /** Returns true iff ID is a complete, well-formed UID. */
+    private static boolean isUid(String id) {
+        if (id.length() != UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i += 1) {
+            if (Character.digit(id.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the pack of this repository, opening it on first use. */
+    private static synchronized PackFile pack() {
+        if (pack == null) {
+            pack = new PackFile(PACK_FILE, PACK_INDEX);
+        }
+        return pack;
+    }
+}
@@ -0,0 +1,430 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static gitlet.Utils.*;
+
+/** An append-only pack of Gitlet objects together with its sorted offset
+ *  index.
+ *
+ *  The pack file is a short header followed by object records laid end to
+ *  end.  Records are only ever appended, so an offset handed out once stays
+ *  valid for the life of the pack.  The index file is a header followed by
+ *  fixed-width entries, one per object, sorted by raw object id:
+ *
+ *      20 bytes   raw SHA-1 id
+ *       8 bytes   offset of the record in the pack
+ *       4 bytes   length of the record
+ *
+ *  The index is memory-mapped, so finding an object is a binary search over
+ *  the mapping followed by a single positioned read of the pack.  The index
+ *  is always rewritten in full to a temporary file and renamed into place
+ *  after the pack data it describes has been forced to disk, so a crash
+ *  leaves either the old or the new index, never a torn one.
+ *
+ *  Garbage collection (see retain) is the one operation that rewrites the
+ *  pack itself.  The surviving records are copied into a new pack, and a
+ *  new index is written for it; both are forced to disk under the names
+ *  of the old files plus GC_SUFFIX before the pack and then the index are
+ *  renamed into place.  A pack opened after a crash between the two
+ *  renames finds only the new index left over and installs it; one
+ *  opened after a crash before them finds both new files and deletes
+ *  them.
+ */
+class PackFile {
+
+    /** Magic number at the start of a pack file. */
+    private static final int PACK_MAGIC = 0x474c504b;
+    /** Magic number at the start of an index file. */
+    private static final int INDEX_MAGIC = 0x474c4958;
+    /** Format version of both files. */
+    private static final int VERSION = 1;
+    /** Size of the header of both files: magic, version and, for the
+     *  index, the number of entries. */
+    private static final int HEADER_SIZE = 12;
+    /** Length of a raw object id. */
+    static final int ID_SIZE = UID_LENGTH / 2;
+    /** Size of one index entry. */
+    private static final int ENTRY_SIZE = ID_SIZE + 8 + 4;
+    /** Suffix of the names of the new files written by retain. */
+    private static final String GC_SUFFIX = ".gc";
+
+    /** The file holding the object records. */
+    private final File packFile;
+    /** The file holding the sorted index. */
+    private final File indexFile;
+    /** The mapped contents of the index file, or null if there is none. */
+    private MappedByteBuffer index;
+    /** The number of entries in the index. */
+    private int count;
+    /** Channel used for reading records, opened on first use and kept
+     *  open for the rest of the command. */
+    private FileChannel reader;
+
+    /** A pack whose data lives in PACKFILE and whose index lives in
+     *  INDEXFILE.  Neither file need exist yet. */
+    PackFile(File packFile, File indexFile) {
+        this.packFile = packFile;
+        this.indexFile = indexFile;
+        this.index = null;
+        this.count = 0;
+        recover();
+        if (indexFile.isFile()) {
+            mapIndex();
+            if (index.getInt(0) != INDEX_MAGIC
+                || index.getInt(4) != VERSION) {
+                throw error("Corrupt pack index.");
+            }
+            count = index.getInt(8);
+        }
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return count;
+    }
+
+    /** Returns true iff the object with UID is in this pack. */
+    boolean contains(String uid) {
+        return find(fromHex(uid)) >= 0;
+    }
+
+    /** Returns the record stored for UID, or null if UID is not in this
+     *  pack. */
+    byte[] read(String uid) {
+        return read(uid, Integer.MAX_VALUE);
+    }
+
+    /** Returns the first LIMIT bytes of the record stored for UID, or the
+     *  whole record if it is shorter, or null if UID is not in this
+     *  pack. */
+    byte[] read(String uid, int limit) {
+        int k = find(fromHex(uid));
+        if (k < 0) {
+            return null;
+        }
+        long offset = index.getLong(entryPosition(k) + ID_SIZE);
+        int length = index.getInt(entryPosition(k) + ID_SIZE + 8);
+        return readRecord(offset, Math.min(length, limit));
+    }
+
+    /** Copy the record stored for UID, less its first SKIP bytes, to the
+     *  end of OUT with FileChannel.transferTo, so that the bytes need not
+     *  pass through the Java heap.  Returns false, copying nothing, if UID
+     *  is not in this pack. */
+    boolean transferTo(String uid, int skip, FileChannel out)
+        throws IOException {
+        int k = find(fromHex(uid));
+        if (k < 0) {
+            return false;
+        }
+        long offset = index.getLong(entryPosition(k) + ID_SIZE) + skip;
+        long length = index.getInt(entryPosition(k) + ID_SIZE + 8) - skip;
+        transferFully(reader(), offset, length, out);
+        return true;
+    }
+
+    /** Copy LENGTH bytes of IN starting at OFFSET to the end of OUT. */
+    static void transferFully(FileChannel in, long offset, long length,
+                              FileChannel out) throws IOException {
+        while (length > 0) {
+            long n = in.transferTo(offset, length, out);
+            if (n <= 0) {
+                throw new IOException("unexpected end of file");
+            }
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /** Returns the ids of all objects in this pack, in increasing order. */
+    List<String> ids() {
+        List<String> result = new ArrayList<>(count);
+        byte[] raw = new byte[ID_SIZE];
+        for (int k = 0; k < count; k += 1) {
+            index.get(entryPosition(k), raw);
+            result.add(toHex(raw, 0));
+        }
+        return result;
+    }
+
+    /** Append the records held in FILES, whose ids are the corresponding
+     *  elements of UIDS, to the pack and rewrite the index to cover them.
+     *  Each file is copied with transferTo, one at a time, so the records
+     *  need not pass through the Java heap.  UIDS must be in increasing
+     *  order and must not already be in this pack. */
+    void append(List<String> uids, List<File> files) {
+        long[] offsets = new long[files.size()];
+        int[] lengths = new int[files.size()];
+        try (FileChannel out =
+                 FileChannel.open(packFile.toPath(),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE)) {
+            long end = out.size();
+            if (end == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(PACK_MAGIC).putInt(VERSION).putInt(0).flip();
+                end += writeFully(out, header, end);
+            }
+            out.position(end);
+            for (int i = 0; i < files.size(); i += 1) {
+                try (FileChannel in =
+                         FileChannel.open(files.get(i).toPath())) {
+                    if (in.size() > Integer.MAX_VALUE) {
+                        throw error("Object %s too large to pack.",
+                                    uids.get(i));
+                    }
+                    offsets[i] = end;
+                    lengths[i] = (int) in.size();
+                    transferFully(in, 0, in.size(), out);
+                    end += in.size();
+                }
+            }
+            out.force(true);
+        } catch (IOException excp) {
+            throw error("Cannot write pack: %s", excp.getMessage());
+        }
+        writeIndex(uids, offsets, lengths);
+    }
+
+    /** Rewrite this pack to hold only the objects whose ids satisfy KEEP,
+     *  and return the number of bytes by which the pack and its index
+     *  shrank.  The surviving records are copied with transferTo in index
+     *  order, and the files are replaced as described in the class
+     *  comment.  Does nothing if every object is kept. */
+    long retain(Predicate<String> keep) {
+        List<Integer> kept = new ArrayList<>();
+        byte[] raw = new byte[ID_SIZE];
+        for (int k = 0; k < count; k += 1) {
+            index.get(entryPosition(k), raw);
+            if (keep.test(toHex(raw, 0))) {
+                kept.add(k);
+            }
+        }
+        if (kept.size() == count) {
+            return 0;
+        }
+        long oldSize = packFile.length() + indexFile.length();
+        File newPack = gcFile(packFile);
+        File newIndex = gcFile(indexFile);
+        ByteBuffer entries =
+            ByteBuffer.allocate(HEADER_SIZE + kept.size() * ENTRY_SIZE);
+        entries.putInt(INDEX_MAGIC).putInt(VERSION).putInt(kept.size());
+        try (FileChannel out =
+                 FileChannel.open(newPack.toPath(),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(PACK_MAGIC).putInt(VERSION).putInt(0).flip();
+            long end = writeFully(out, header, 0);
+            out.position(end);
+            for (int k : kept) {
+                int pos = entryPosition(k);
+                index.get(pos, raw);
+                long offset = index.getLong(pos + ID_SIZE);
+                int length = index.getInt(pos + ID_SIZE + 8);
+                transferFully(reader(), offset, length, out);
+                entries.put(raw).putLong(end).putInt(length);
+                end += length;
+            }
+            out.force(true);
+        } catch (IOException excp) {
+            throw error("Cannot write pack: %s", excp.getMessage());
+        }
+        entries.flip();
+        writeFile(newIndex, entries);
+        try {
+            closeReader();
+            rename(newPack, packFile);
+            rename(newIndex, indexFile);
+        } catch (IOException excp) {
+            throw error("Cannot install pack: %s", excp.getMessage());
+        }
+        mapIndex();
+        count = kept.size();
+        return oldSize - packFile.length() - indexFile.length();
+    }
+
+    /** Merge the new entries given by UIDS, OFFSETS and LENGTHS with the
+     *  current index, write the result to a temporary file, and rename it
+     *  over the index file. */
+    private void writeIndex(List<String> uids, long[] offsets,
+                            int[] lengths) {
+        int total = count + uids.size();
+        ByteBuffer result =
+            ByteBuffer.allocate(HEADER_SIZE + total * ENTRY_SIZE);
+        result.putInt(INDEX_MAGIC).putInt(VERSION).putInt(total);
+        byte[] old = new byte[ENTRY_SIZE];
+        int k, i;
+        k = i = 0;
+        while (k < count || i < uids.size()) {
+            if (i == uids.size()
+                || (k < count && compareId(k, fromHex(uids.get(i))) < 0)) {
+                index.get(entryPosition(k), old);
+                result.put(old);
+                k += 1;
+            } else {
+                result.put(fromHex(uids.get(i)));
+                result.putLong(offsets[i]);
+                result.putInt(lengths[i]);
+                i += 1;
+            }
+        }
+        result.flip();
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        writeFile(tmp, result);
+        try {
+            rename(tmp, indexFile);
+        } catch (IOException excp) {
+            throw error("Cannot install pack index: %s", excp.getMessage());
+        }
+        mapIndex();
+        count = total;
+    }
+
+    /** Write all of CONTENTS to FILE, replacing anything there, and force
+     *  it to disk. */
+    private static void writeFile(File file, ByteBuffer contents) {
+        try (FileChannel out =
+                 FileChannel.open(file.toPath(),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+            writeFully(out, contents, 0);
+            out.force(true);
+        } catch (IOException excp) {
+            throw error("Cannot write pack index: %s", excp.getMessage());
+        }
+    }
+
+    /** Atomically replace TARGET with SOURCE. */
+    private static void rename(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Returns the file FILE is replaced by in retain. */
+    private static File gcFile(File file) {
+        return new File(file.getPath() + GC_SUFFIX);
+    }
+
+    /** Finish or undo a retain that was interrupted by a crash, as
+     *  described in the class comment. */
+    private void recover() {
+        File newPack = gcFile(packFile);
+        File newIndex = gcFile(indexFile);
+        try {
+            if (newIndex.isFile() && !newPack.exists()) {
+                rename(newIndex, indexFile);
+            } else {
+                Files.deleteIfExists(newPack.toPath());
+                Files.deleteIfExists(newIndex.toPath());
+            }
+        } catch (IOException excp) {
+            throw error("Cannot recover pack: %s", excp.getMessage());
+        }
+    }
+
+    /** Map the index file into INDEX. */
+    private void mapIndex() {
+        try (FileChannel chan = FileChannel.open(indexFile.toPath())) {
+            index = chan.map(FileChannel.MapMode.READ_ONLY, 0, chan.size());
+        } catch (IOException excp) {
+            throw error("Cannot read pack index: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns the index of the entry whose id is RAWID, or -1 if there is
+     *  none. */
+    private int find(byte[] rawId) {
+        int lo, hi;
+        lo = 0;
+        hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareId(mid, rawId);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Compare the id of index entry K with RAWID as unsigned bytes. */
+    private int compareId(int k, byte[] rawId) {
+        int pos = entryPosition(k);
+        for (int i = 0; i < ID_SIZE; i += 1) {
+            int c = Byte.compareUnsigned(index.get(pos + i), rawId[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the position of index entry K in the index file. */
+    private static int entryPosition(int k) {
+        return HEADER_SIZE + k * ENTRY_SIZE;
+    }
+
+    /** Returns the LENGTH bytes of the pack starting at OFFSET, fetched
+     *  with one positioned read. */
+    private byte[] readRecord(long offset, int length) {
+        ByteBuffer result = ByteBuffer.allocate(length);
+        try {
+            FileChannel in = reader();
+            while (result.hasRemaining()) {
+                if (in.read(result, offset + result.position()) < 0) {
+                    throw error("Truncated pack file.");
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot read pack: %s", excp.getMessage());
+        }
+        return result.array();
+    }
+
+    /** Returns the channel used for reading records, opening it on first
+     *  use.  Positioned reads on it may be made from several threads. */
+    private synchronized FileChannel reader() throws IOException {
+        if (reader == null) {
+            reader = FileChannel.open(packFile.toPath());
+        }
+        return reader;
+    }
+
+    /** Close the channel used for reading records, if it is open. */
+    private synchronized void closeReader() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    /** Write all of BUF to OUT at POSITION, returning the number of bytes
+     *  written. */
+    private static int writeFully(FileChannel out, ByteBuffer buf,
+                                  long position) throws IOException {
+        int n = buf.remaining();
+        while (buf.hasRemaining()) {
+            position += out.write(buf, position);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,313 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Repository.BRANCHES_DIR;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Repository.HEAD_FILE;
+import static gitlet.Utils.*;
+
+/** The branch heads of a repository and its HEAD.
+ *
+ *  A branch is either loose, in its own file .gitlet/branches/NAME holding
+ *  the id of its head commit, or packed in .gitlet/packed-refs, and a
+ *  loose branch overrides a packed one of the same name.  The packed file
+ *  is a header (magic, version, number of branches, N) followed by
+ *
+ *      N offsets     4 bytes each, of the entries in increasing order of
+ *                    name
+ *      N entries     each the varint length of the UTF-8 name, the name,
+ *                    and the raw id of the head commit
+ *
+ *  It is memory-mapped, so a packed branch is found by a binary search of
+ *  the offsets and all of them are listed by reading the entries front to
+ *  back.  Updating a branch writes its loose file, and if that leaves
+ *  more than MAX_LOOSE of them, folds them all into the packed file, so
+ *  listing the branches stays one sequential read and a short directory
+ *  listing however many there are.  Repack packs them all.  Reading and
+ *  listing branches never change any file.
+ *
+ *  Every file here is replaced, never changed in place: the new contents
+ *  are written to a temporary file and forced to disk, and that file is
+ *  renamed over the old, so a crash leaves either the old or the new
+ *  value of a branch or of HEAD, never a torn one.  A branch is deleted
+ *  from the packed file before its loose file is removed, so a crash in
+ *  between leaves its current value, not an older packed one.
+ *  Repositories made before the packed file existed have only loose
+ *  branches, which are read as they are.
+ *
+ *  A branch name is a path under .gitlet/branches, so only names that
+ *  stay there are accepted (see isValidName): there is no branch by any
+ *  other name, and one cannot be made.  A name is either plain or
+ *  REMOTE/BRANCH, and a branch R cannot exist together with branches
+ *  R/B, since the file of one would have to be the directory of the
+ *  others.
+ */
+class RefStore {
+
+    /** File holding the packed branches. */
+    static final File PACKED_FILE = join(GITLET_DIR, "packed-refs");
+    /** Loose branches beyond this many are folded into PACKED_FILE when
+     *  a branch is updated. */
+    static final int MAX_LOOSE = 16;
+    /** Magic number at the start of PACKED_FILE. */
+    private static final int MAGIC = 0x474c5246;
+    /** Format version of PACKED_FILE. */
+    private static final int VERSION = 1;
+    /** Size of the header of PACKED_FILE. */
+    private static final int HEADER_SIZE = 12;
+    /** File new contents are written to before being renamed into
+     *  place. */
+    private static final File TEMP_FILE = join(GITLET_DIR, "refs.tmp");
+
+    /** Returns the id of the head commit of the branch NAME, or null if
+     *  there is no such branch. */
+    static String read(String name) {
+        if (!isValidName(name)) {
+            return null;
+        }
+        File loose = join(BRANCHES_DIR, name);
+        if (loose.isFile()) {
+            return readContentsAsString(loose);
+        }
+        ByteBuffer packed = mapPacked();
+        if (packed == null) {
+            return null;
+        }
+        int lo = 0, hi = packed.getInt(8) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            ByteBuffer entry = entry(packed, mid);
+            int c = readString(entry).compareTo(name);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return toHex(readRaw(entry), 0);
+            }
+        }
+        return null;
+    }
+
+    /** Make ID the head commit of the branch NAME, creating it if need
+     *  be.  The loose branches are packed if there are more than
+     *  MAX_LOOSE.  A new branch whose name is invalid or conflicts with
+     *  an existing branch (see conflict) is refused. */
+    static void write(String name, String id) {
+        if (!isValidName(name)) {
+            throw error("Invalid branch name.");
+        }
+        File loose = join(BRANCHES_DIR, name);
+        String other = loose.isFile() ? null : conflict(name);
+        if (other != null) {
+            throw error("Branch name conflicts with branch %s.", other);
+        } else if (loose.isDirectory()) {
+            loose.delete();
+        }
+        loose.getParentFile().mkdirs();
+        replace(loose, id.getBytes(StandardCharsets.UTF_8));
+        if (looseNames().size() > MAX_LOOSE) {
+            pack();
+        }
+    }
+
+    /** Delete the branch NAME, which must exist. */
+    static void delete(String name) {
+        if (!isValidName(name)) {
+            throw error("A branch with that name does not exist.");
+        }
+        TreeMap<String, String> packed = readPacked();
+        if (packed.remove(name) != null) {
+            writePacked(packed);
+        }
+        join(BRANCHES_DIR, name).delete();
+    }
+
+    /** Returns every branch, in increasing order of name, mapped to the id
+     *  of its head commit.  Branches fetched from a remote are named
+     *  REMOTE/BRANCH. */
+    static TreeMap<String, String> all() {
+        TreeMap<String, String> result = readPacked();
+        for (String name : looseNames()) {
+            result.put(name,
+                       readContentsAsString(join(BRANCHES_DIR, name)));
+        }
+        return result;
+    }
+
+    /** Fold every loose branch into the packed file. */
+    static void pack() {
+        List<String> loose = looseNames();
+        if (!loose.isEmpty()) {
+            TreeMap<String, String> refs = readPacked();
+            for (String name : loose) {
+                refs.put(name, readContentsAsString(join(BRANCHES_DIR,
+                                                         name)));
+            }
+            writePacked(refs);
+            for (String name : loose) {
+                join(BRANCHES_DIR, name).delete();
+            }
+        }
+    }
+
+    /** Returns the name of the current branch. */
+    static String head() {
+        return readContentsAsString(HEAD_FILE);
+    }
+
+    /** Make BRANCH the current branch. */
+    static void setHead(String branch) {
+        replace(HEAD_FILE, branch.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns true iff NAME can name a branch: it has at most two parts
+     *  between '/'s, as REMOTE/BRANCH does, and none of them is empty,
+     *  "." or "..", nor holds a backslash, so that it names a file within
+     *  BRANCHES_DIR or one of its subdirectories. */
+    static boolean isValidName(String name) {
+        String[] parts = name.split("/", -1);
+        if (parts.length > 2) {
+            return false;
+        }
+        for (String part : parts) {
+            if (part.isEmpty() || part.equals(".") || part.equals("..")
+                || part.indexOf('\\') >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the name of an existing branch that the branch NAME cannot
+     *  exist together with, or null if there is none: R if NAME is R/B,
+     *  and any branch NAME/B otherwise.  An empty directory left behind
+     *  by deleted branches is no conflict. */
+    private static String conflict(String name) {
+        int slash = name.indexOf('/');
+        if (slash >= 0) {
+            String remote = name.substring(0, slash);
+            return read(remote) != null ? remote : null;
+        }
+        List<String> loose = plainFilenamesIn(join(BRANCHES_DIR, name));
+        if (loose != null && !loose.isEmpty()) {
+            return name + "/" + loose.get(0);
+        }
+        String next = readPacked().ceilingKey(name + "/");
+        return next != null && next.startsWith(name + "/") ? next : null;
+    }
+
+    /** Returns the names of the loose branches: the files in BRANCHES_DIR
+     *  and, prefixed by the name of the directory and a '/', those in its
+     *  subdirectories. */
+    private static List<String> looseNames() {
+        List<String> result = new ArrayList<>(plainFilenamesIn(BRANCHES_DIR));
+        File[] remotes = BRANCHES_DIR.listFiles(File::isDirectory);
+        for (File dir : remotes == null ? new File[0] : remotes) {
+            for (String name : plainFilenamesIn(dir)) {
+                result.add(dir.getName() + "/" + name);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the packed branches mapped to their head commits. */
+    private static TreeMap<String, String> readPacked() {
+        TreeMap<String, String> result = new TreeMap<>();
+        ByteBuffer packed = mapPacked();
+        int count = packed == null ? 0 : packed.getInt(8);
+        if (count > 0) {
+            ByteBuffer in = entry(packed, 0);
+            for (int k = 0; k < count; k += 1) {
+                String name = readString(in);
+                result.put(name, toHex(readRaw(in), 0));
+            }
+        }
+        return result;
+    }
+
+    /** Replace the packed file with one holding REFS. */
+    private static void writePacked(Map<String, String> refs) {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        ByteBuffer header =
+            ByteBuffer.allocate(HEADER_SIZE + 4 * refs.size());
+        header.putInt(MAGIC).putInt(VERSION).putInt(refs.size());
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            header.putInt(header.capacity() + entries.size());
+            writeString(entries, ref.getKey());
+            entries.writeBytes(fromHex(ref.getValue()));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(header.array());
+        out.writeBytes(entries.toByteArray());
+        replace(PACKED_FILE, out.toByteArray());
+    }
+
+    /** Returns the packed file, mapped into memory, or null if there is
+     *  none. */
+    private static ByteBuffer mapPacked() {
+        if (!PACKED_FILE.isFile()) {
+            return null;
+        }
+        try (FileChannel chan = FileChannel.open(PACKED_FILE.toPath())) {
+            ByteBuffer result =
+                chan.map(FileChannel.MapMode.READ_ONLY, 0, chan.size());
+            if (result.capacity() < HEADER_SIZE
+                || result.getInt(0) != MAGIC
+                || result.getInt(4) != VERSION) {
+                throw error("Corrupt packed refs.");
+            }
+            return result;
+        } catch (IOException excp) {
+            throw error("Cannot read packed refs: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns a view of PACKED positioned at its entry K. */
+    private static ByteBuffer entry(ByteBuffer packed, int k) {
+        return packed.duplicate().position(packed.getInt(HEADER_SIZE
+                                                         + 4 * k));
+    }
+
+    /** Returns the raw id read from IN. */
+    private static byte[] readRaw(ByteBuffer in) {
+        byte[] result = new byte[PackFile.ID_SIZE];
+        in.get(result);
+        return result;
+    }
+
+    /** Replace the contents of FILE with CONTENTS by writing them to
+     *  TEMP_FILE, forcing it to disk, and renaming it to FILE. */
+    private static void replace(File file, byte[] contents) {
+        try (FileChannel out =
+                 FileChannel.open(TEMP_FILE.toPath(),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(contents);
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            out.force(false);
+            Files.move(TEMP_FILE.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Cannot write %s: %s", file.getName(),
+                        excp.getMessage());
+        }
+    }
+}
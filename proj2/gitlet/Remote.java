@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** A remote: another Gitlet repository on this machine, known to this one
+ *  by name.  The file .gitlet/remotes/NAME holds the path of the remote's
+ *  .gitlet directory, as given to add-remote.
+ *
+ *  Fetching and pushing do not read or write the remote's files directly.
+ *  Instead, as Git does for a local remote, they start Gitlet in the
+ *  remote's working directory to run the other end of the transfer
+ *  (upload-pack or receive-pack) over its standard input and output, so
+ *  each repository is only ever touched by the classes that manage it.
+ *  See Transfer for what passes between the two.
+ */
+class Remote {
+
+    /** Directory holding one file per remote. */
+    static final File REMOTES_DIR = join(GITLET_DIR, "remotes");
+
+    /** The name of this remote. */
+    private final String name;
+    /** The remote's .gitlet directory. */
+    private final File gitletDir;
+
+    /** The remote called NAME whose .gitlet directory is GITLETDIR. */
+    private Remote(String name, File gitletDir) {
+        this.name = name;
+        this.gitletDir = gitletDir;
+    }
+
+    /** Record the repository whose .gitlet directory is PATH, with '/'
+     *  between its components, as the remote called NAME. */
+    static void add(String name, String path) {
+        if (name.indexOf('/') >= 0 || !RefStore.isValidName(name)) {
+            throw error("Invalid remote name.");
+        }
+        File file = join(REMOTES_DIR, name);
+        if (file.exists()) {
+            throw error("A remote with that name already exists.");
+        }
+        REMOTES_DIR.mkdir();
+        writeContents(file, path.replace('/', File.separatorChar));
+    }
+
+    /** Forget the remote called NAME. */
+    static void remove(String name) {
+        if (!RefStore.isValidName(name)
+            || !join(REMOTES_DIR, name).delete()) {
+            throw error("A remote with that name does not exist.");
+        }
+    }
+
+    /** Returns the remote called NAME. */
+    static Remote get(String name) {
+        File file = join(REMOTES_DIR, name);
+        if (!RefStore.isValidName(name) || !file.isFile()) {
+            throw error("A remote with that name does not exist.");
+        }
+        File dir = new File(readContentsAsString(file));
+        if (!dir.isAbsolute()) {
+            dir = join(Repository.CWD, dir.getPath());
+        }
+        return new Remote(name, dir);
+    }
+
+    /** Bring down the commits of BRANCH of this remote that this
+     *  repository lacks, and make the branch NAME/BRANCH point to its
+     *  head. */
+    void fetch(String branch) {
+        long start = System.nanoTime();
+        Process process = start("upload-pack");
+        Transfer transfer = new Transfer(process.getInputStream(),
+                                         process.getOutputStream());
+        try {
+            transfer.writeName(branch);
+            String head = transfer.readId();
+            if (head == null) {
+                transfer.writeGo(false);
+                throw error("That remote does not have that branch.");
+            }
+            transfer.writeGo(true);
+            transfer.sendHaves();
+            transfer.readPack();
+            Repository.setBranchHead(name + "/" + branch, head);
+            Transfer.INCOMING_FILE.delete();
+        } catch (IOException excp) {
+            throw error("Fetch failed: %s", excp.getMessage());
+        } finally {
+            finish(process);
+        }
+        transfer.record("fetch", name, branch, System.nanoTime() - start);
+    }
+
+    /** Send the commits of the current branch that BRANCH of this remote
+     *  lacks, and make the head commit the head of BRANCH there.  Throws a
+     *  GitletException if the remote's BRANCH has commits that the current
+     *  branch lacks. */
+    void push(String branch) {
+        long start = System.nanoTime();
+        String head = Repository.headId();
+        CommitGraph graph = CommitGraph.load();
+        Process process = start("receive-pack");
+        Transfer transfer = new Transfer(process.getInputStream(),
+                                         process.getOutputStream());
+        try {
+            transfer.writeName(branch);
+            String remoteHead = transfer.readId();
+            if (remoteHead != null && (!graph.contains(remoteHead)
+                || !graph.isAncestor(remoteHead, head))) {
+                transfer.writeGo(false);
+                throw error("Please pull down remote changes before "
+                            + "pushing.");
+            }
+            transfer.writeGo(true);
+            transfer.writeId(head);
+            transfer.sendPack(graph, graph.row(head),
+                              transfer.readHaves(graph));
+            transfer.readDone();
+        } catch (IOException excp) {
+            throw error("Push failed: %s", excp.getMessage());
+        } finally {
+            finish(process);
+        }
+        transfer.record("push", name, branch, System.nanoTime() - start);
+    }
+
+    /** Start Gitlet in the remote's working directory to run COMMAND,
+     *  with the same Java and class path as this process, and return the
+     *  process.  Its standard error is that of this process. */
+    private Process start(String command) {
+        if (!gitletDir.isDirectory()) {
+            throw error("Remote directory not found.");
+        }
+        String java = ProcessHandle.current().info().command()
+            .orElse("java");
+        ProcessBuilder builder =
+            new ProcessBuilder(java, "-cp",
+                               System.getProperty("java.class.path"),
+                               Main.class.getName(), command);
+        builder.directory(gitletDir.getAbsoluteFile().getParentFile());
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            return builder.start();
+        } catch (IOException excp) {
+            throw error("Cannot reach remote: %s", excp.getMessage());
+        }
+    }
+
+    /** Close the standard input of PROCESS, telling it that nothing more
+     *  is coming, and wait for it to end. */
+    private static void finish(Process process) {
+        try {
+            process.getOutputStream().close();
+            process.waitFor();
+        } catch (IOException excp) {
+            process.destroy();
+        } catch (InterruptedException excp) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,29 +1,797 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import static gitlet.Utils.*;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
-// TODO: any imports you need here
+import static gitlet.Utils.*;
 
 /** Represents a gitlet repository.
- *  TODO: It's a good idea to give a description here of what else this Class
- *  does at a high level.
+ *  The static methods of this class implement the Gitlet commands on the
+ *  repository in the current working directory.  Its persistent state
+ *  lives under .gitlet:
+ *
+ *      HEAD          the name of the current branch
+ *      branches/     one file per loose branch holding the id of its head
+ *                    commit, and one directory per remote holding its
+ *                    branches
+ *      packed-refs   the other branches (see RefStore)
+ *      remotes/      one file per remote holding its path (see Remote)
+ *      incoming, transfer-log
+ *                    commits received by an unfinished fetch or push, and
+ *                    a record of transfers (see Transfer)
+ *      staging       the staging area (see StagingArea)
+ *      stat-cache    blob ids of working files by stat data (see StatCache)
+ *      commit-graph  parents and generations of commits (see CommitGraph)
+ *      commit-index  commit ids in sorted order (see CommitIndex)
+ *      catalog, catalog-messages
+ *                    every commit made, in order (see CommitCatalog)
+ *      message-index words of commit messages (see MessageIndex)
+ *      objects/      loose blobs, trees and commits (see ObjectStore)
+ *      pack/         the object pack and its index (see PackFile)
  *
  *  @author TODO
  */
 public class Repository {
-    /**
-     * TODO: add instance variables here.
-     *
-     * List all instance variables of the Repository class here with a useful
-     * comment above them describing what that variable represents and how that
-     * variable is used. We've provided two examples for you.
-     */
 
     /** The current working directory. */
     public static final File CWD = new File(System.getProperty("user.dir"));
     /** The .gitlet directory. */
     public static final File GITLET_DIR = join(CWD, ".gitlet");
+    /** File holding the name of the current branch. */
+    static final File HEAD_FILE = join(GITLET_DIR, "HEAD");
+    /** Directory holding one file per branch. */
+    static final File BRANCHES_DIR = join(GITLET_DIR, "branches");
+    /** Name of the branch created by init. */
+    static final String DEFAULT_BRANCH = "master";
+
+    /** Create a new repository in the current directory, with a single
+     *  initial commit on branch master. */
+    static void init() {
+        if (GITLET_DIR.exists()) {
+            throw error("A Gitlet version-control system already exists "
+                        + "in the current directory.");
+        }
+        GITLET_DIR.mkdir();
+        BRANCHES_DIR.mkdir();
+        ObjectStore.init();
+        CommitCatalog catalog = CommitCatalog.create();
+        Commit initial = Commit.initial();
+        String id = initial.save();
+        catalog.append(id, initial, CommitGraph.load().append(id, initial));
+        setBranchHead(DEFAULT_BRANCH, id);
+        RefStore.setHead(DEFAULT_BRANCH);
+    }
+
+    /** Throw a GitletException unless the current directory holds a
+     *  Gitlet repository. */
+    static void checkInitialized() {
+        if (!GITLET_DIR.isDirectory()) {
+            throw error("Not in an initialized Gitlet directory.");
+        }
+    }
+
+    /** Stage the current contents of the working files NAMES for
+     *  addition.  Nothing is staged unless all of them exist, and the
+     *  staging area is saved, and forced to disk, once. */
+    static void add(String... names) {
+        String[] tracked = new String[names.length];
+        for (int i = 0; i < names.length; i += 1) {
+            tracked[i] = trackedName(names[i]);
+            if (!join(CWD, tracked[i]).isFile()) {
+                throw error("File does not exist.");
+            }
+        }
+        StagingArea stage = StagingArea.load();
+        StatCache stats = StatCache.load();
+        Commit head = headCommit();
+        for (String name : tracked) {
+            String blob = stats.blobId(name);
+            String headBlob = head.getBlob(name);
+            if (blob.equals(headBlob)) {
+                stage.unstage(name);
+            } else {
+                if (!ObjectStore.contains(blob)) {
+                    ObjectStore.writeBlob(join(CWD, name), headBlob);
+                }
+                stage.add(name, blob);
+            }
+        }
+        stage.save();
+        stats.save();
+    }
+
+    /** Unstage file NAME if it is staged for addition, and if it is
+     *  tracked in the head commit, stage it for removal and delete it from
+     *  the working directory. */
+    static void rm(String name) {
+        name = trackedName(name);
+        StagingArea stage = StagingArea.load();
+        boolean tracked = headCommit().getBlob(name) != null;
+        if (!tracked && !stage.getAdded().containsKey(name)) {
+            throw error("No reason to remove the file.");
+        }
+        if (tracked) {
+            stage.remove(name);
+            deleteWorkingFile(name);
+        } else {
+            stage.unstage(name);
+        }
+        stage.save();
+    }
+
+    /** Commit the staged changes with log message MESSAGE. */
+    static void commit(String message) {
+        commit(message, null);
+    }
+
+    /** Commit the staged changes with log message MESSAGE and, if it is
+     *  not null, second parent MERGEPARENT.  Only the trees of the
+     *  directories holding staged files are written; the rest are shared
+     *  with the head commit. */
+    static void commit(String message, String mergeParent) {
+        if (message.isBlank()) {
+            throw error("Please enter a commit message.");
+        }
+        StagingArea stage = StagingArea.load();
+        if (stage.isEmpty()) {
+            throw error("No changes added to the commit.");
+        }
+        String tree = Tree.update(headCommit().getTree(), stage.getAdded(),
+                                  stage.getRemoved());
+        Commit commit = new Commit(message, System.currentTimeMillis(),
+                                   headId(), mergeParent, tree);
+        CommitCatalog catalog = CommitCatalog.load();
+        String id = commit.save();
+        catalog.append(id, commit, CommitGraph.load().append(id, commit));
+        setBranchHead(currentBranch(), id);
+        stage.clear();
+        stage.save();
+    }
+
+    /** Print the history of the head commit, following first parents:
+     *  at most MAXCOUNT entries, after skipping the first SKIP.  Commits
+     *  past the last entry printed are not read. */
+    static void log(int skip, int maxCount) {
+        String id = headId();
+        for (int k = 0; id != null && k < skip + (long) maxCount; k += 1) {
+            Commit commit = Commit.load(id);
+            if (k >= skip) {
+                printLogEntry(id, commit);
+            }
+            id = commit.getParent();
+        }
+    }
+
+    /** Print the log entries of all commits ever made, in the order they
+     *  were made.  Entries are built from the commit catalog and the
+     *  commit graph, without reading any commit.  A catalog record whose
+     *  graph row no longer holds its commit, as after the graph has been
+     *  deleted and rebuilt, is looked up in the graph by id instead. */
+    static void globalLog() {
+        CommitCatalog catalog = CommitCatalog.load();
+        CommitGraph graph = CommitGraph.load();
+        for (int k = 0; k < catalog.size(); k += 1) {
+            String id = catalog.id(k);
+            int row = catalog.graphRow(k);
+            if (row >= graph.size() || !graph.id(row).equals(id)) {
+                row = graph.row(id);
+            }
+            int parent = graph.parent(row);
+            int mergeParent = graph.mergeParent(row);
+            Commit header =
+                new Commit(catalog.id(k), catalog.message(k),
+                           catalog.timestamp(k),
+                           parent == CommitGraph.NONE ? null : graph.id(parent),
+                           mergeParent == CommitGraph.NONE
+                           ? null : graph.id(mergeParent), null);
+            printLogEntry(id, header);
+        }
+    }
+
+    /** Print the ids of all commits whose log message is MESSAGE. */
+    static void find(String message) {
+        CommitCatalog catalog = CommitCatalog.load();
+        List<Integer> found = catalog.find(message);
+        if (found.isEmpty()) {
+            throw error("Found no commit with that message.");
+        }
+        for (int k : found) {
+            message(catalog.id(k));
+        }
+    }
+
+    /** Print the log entry for COMMIT, whose id is ID.  The entry is
+     *  printed whole rather than a line at a time, and its message is not
+     *  taken as a format. */
+    static void printLogEntry(String id, Commit commit) {
+        StringBuilder entry = new StringBuilder(128);
+        entry.append("===\ncommit ").append(id).append('\n');
+        if (commit.getMergeParent() != null) {
+            entry.append("Merge: ")
+                .append(commit.getParent(), 0, 7).append(' ')
+                .append(commit.getMergeParent(), 0, 7).append('\n');
+        }
+        entry.append(commit.dateLine()).append('\n')
+            .append(commit.getMessage()).append("\n\n");
+        System.out.print(entry);
+    }
+
+    /** Print the branches, the staging area, the unstaged modifications
+     *  and the untracked files.  Working files are only rehashed if their
+     *  stat data have changed since their ids were last cached. */
+    static void status() {
+        StagingArea stage = StagingArea.load();
+        StatCache stats = StatCache.load();
+        Map<String, BasicFileAttributes> working = WorkingTree.files();
+        String current = currentBranch();
+
+        message("=== Branches ===");
+        for (String branch : branchNames()) {
+            message(branch.equals(current) ? "*" + branch : branch);
+        }
+        message("");
+
+        message("=== Staged Files ===");
+        for (String name : stage.getAdded().keySet()) {
+            message(name);
+        }
+        message("");
+
+        message("=== Removed Files ===");
+        for (String name : stage.getRemoved()) {
+            message(name);
+        }
+        message("");
+
+        TreeMap<String, String> modified = new TreeMap<>();
+        Map<String, String> snapshot =
+            stage.isEmpty() ? headCommit().getBlobs() : stagedSnapshot(stage);
+        Map<String, String> workingBlobs =
+            stats.blobIds(snapshot.keySet(), working);
+        for (Map.Entry<String, String> entry : snapshot.entrySet()) {
+            String name = entry.getKey();
+            String blob = workingBlobs.get(name);
+            if (blob == null) {
+                modified.put(name, "deleted");
+            } else if (!blob.equals(entry.getValue())) {
+                modified.put(name, "modified");
+            }
+        }
+        message("=== Modifications Not Staged For Commit ===");
+        for (Map.Entry<String, String> entry : modified.entrySet()) {
+            message("%s (%s)", entry.getKey(), entry.getValue());
+        }
+        message("");
+
+        message("=== Untracked Files ===");
+        for (String name : working.keySet()) {
+            if (!snapshot.containsKey(name)) {
+                message(name);
+            }
+        }
+        message("");
+        stats.save();
+    }
+
+    /** Print the differences between the files of the commit named by
+     *  FROM and those of the commit named by TO, each a branch name or a
+     *  commit id.  If TO is null, compare with the working files instead,
+     *  and if FROM is also null, compare the head commit with them.  Only
+     *  files tracked by one of the commits are compared; working files
+     *  whose stat data show they are unchanged are not read, and nor are
+     *  subdirectories whose trees are the same in both commits. */
+    static void diff(String from, String to) {
+        OutputStream out = System.out;
+        try {
+            if (to == null) {
+                Map<String, String> old = from == null
+                    ? headCommit().getBlobs()
+                    : Commit.load(resolveRevision(from)).getBlobs();
+                StatCache stats = StatCache.load();
+                Map<String, String> working =
+                    stats.blobIds(old.keySet(), WorkingTree.files());
+                for (Map.Entry<String, String> entry : old.entrySet()) {
+                    String name = entry.getKey();
+                    String blob = working.get(name);
+                    if (!entry.getValue().equals(blob)) {
+                        printDiff(name, blobLines(entry.getValue()),
+                                  blob == null ? null
+                                  : Lines.of(join(CWD, name)), out);
+                    }
+                }
+                stats.save();
+            } else {
+                Commit older = Commit.load(resolveRevision(from));
+                Commit newer = Commit.load(resolveRevision(to));
+                TreeMap<String, String> writes = new TreeMap<>();
+                List<String> deletes = new ArrayList<>();
+                Tree.diff(older.getTree(), newer.getTree(), writes, deletes);
+                TreeSet<String> names = new TreeSet<>(writes.keySet());
+                names.addAll(deletes);
+                for (String name : names) {
+                    String a = older.getBlob(name), b = writes.get(name);
+                    printDiff(name, a == null ? null : blobLines(a),
+                              b == null ? null : blobLines(b), out);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write diff: %s", excp.getMessage());
+        }
+    }
+
+    /** Print on OUT the differences between OLDLINES and NEWLINES, the old
+     *  and new versions of file NAME, as a unified diff without context.
+     *  Either version may be null if the file is missing from it. */
+    static void printDiff(String name, Lines oldLines, Lines newLines,
+                          OutputStream out) throws IOException {
+        Lines a = oldLines == null ? Lines.empty() : oldLines;
+        Lines b = newLines == null ? Lines.empty() : newLines;
+        boolean headed = false;
+        if (oldLines == null || newLines == null) {
+            printDiffHeader(name, oldLines != null, newLines != null, out);
+            headed = true;
+        }
+        for (Diff.Hunk hunk : new Diff(a, b)) {
+            if (!headed) {
+                printDiffHeader(name, true, true, out);
+                headed = true;
+            }
+            out.write(String.format("@@ -%s +%s @@\n",
+                                    hunkRange(hunk.oldStart(), hunk.oldEnd()),
+                                    hunkRange(hunk.newStart(), hunk.newEnd()))
+                      .getBytes(StandardCharsets.UTF_8));
+            printHunkLines(a, hunk.oldStart(), hunk.oldEnd(), '-', out);
+            printHunkLines(b, hunk.newStart(), hunk.newEnd(), '+', out);
+        }
+        a.close();
+        b.close();
+    }
+
+    /** Print on OUT the header of the diff of file NAME, which exists in
+     *  the old version iff INOLD and in the new iff INNEW. */
+    static void printDiffHeader(String name, boolean inOld, boolean inNew,
+                                OutputStream out) throws IOException {
+        String header = String.format("diff --git a/%s b/%s\n--- %s\n+++ %s\n",
+                                      name, name,
+                                      inOld ? "a/" + name : "/dev/null",
+                                      inNew ? "b/" + name : "/dev/null");
+        out.write(header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Print on OUT lines LO .. HI-1 of LINES, each preceded by MARK,
+     *  noting a last line that lacks a newline as Git does. */
+    static void printHunkLines(Lines lines, int lo, int hi, char mark,
+                               OutputStream out) throws IOException {
+        lines.write(lo, hi, new byte[] { (byte) mark }, out);
+        if (lo < hi && hi == lines.size() && lines.missingFinalNewline()) {
+            out.write("\n\\ No newline at end of file\n"
+                      .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Returns the range of lines LO .. HI-1, numbered from 0, as shown in
+     *  a hunk header: the first line, numbered from 1, and the number of
+     *  lines if it is not 1.  An empty range is shown by the line before
+     *  it. */
+    static String hunkRange(int lo, int hi) {
+        if (hi - lo == 1) {
+            return Integer.toString(hi);
+        }
+        return String.format("%d,%d", hi == lo ? lo : lo + 1, hi - lo);
+    }
+
+    /** Restore working file NAME to its version in the head commit. */
+    static void checkoutFile(String name) {
+        checkoutFile(headId(), name);
+    }
+
+    /** Restore working file NAME to its version in the commit whose id is
+     *  or starts with COMMITID. */
+    static void checkoutFile(String commitId, String name) {
+        name = trackedName(name);
+        Commit commit = Commit.load(resolveCommitId(commitId));
+        String blob = commit.getBlob(name);
+        if (blob == null) {
+            throw error("File does not exist in that commit.");
+        }
+        checkoutBlob(blob, join(CWD, name));
+        StatCache stats = StatCache.load();
+        stats.record(name, blob);
+        stats.save();
+    }
+
+    /** Check out all files of the head commit of BRANCH and make BRANCH the
+     *  current branch. */
+    static void checkoutBranch(String branch) {
+        String id = branchHead(branch);
+        if (id == null) {
+            throw error("No such branch exists.");
+        }
+        if (branch.equals(currentBranch())) {
+            throw error("No need to checkout the current branch.");
+        }
+        checkoutCommit(Commit.load(id));
+        RefStore.setHead(branch);
+    }
+
+    /** Create a new branch named NAME at the head commit. */
+    static void branch(String name) {
+        if (branchHead(name) != null) {
+            throw error("A branch with that name already exists.");
+        }
+        setBranchHead(name, headId());
+    }
+
+    /** Delete the branch named NAME. */
+    static void rmBranch(String name) {
+        if (branchHead(name) == null) {
+            throw error("A branch with that name does not exist.");
+        }
+        if (name.equals(currentBranch())) {
+            throw error("Cannot remove the current branch.");
+        }
+        RefStore.delete(name);
+    }
+
+    /** Merge the head of BRANCH into the current branch.  The split point
+     *  is found in the commit graph, without reading any commits.  Only
+     *  files that differ between the trees of the split point and of the
+     *  given branch can need merging, so only those are examined.  Files
+     *  changed on both sides are merged line by line (see Diff3). */
+    static void merge(String branch) {
+        StagingArea stage = StagingArea.load();
+        if (!stage.isEmpty()) {
+            throw error("You have uncommitted changes.");
+        }
+        String givenId = branchHead(branch);
+        if (givenId == null) {
+            throw error("A branch with that name does not exist.");
+        }
+        if (branch.equals(currentBranch())) {
+            throw error("Cannot merge a branch with itself.");
+        }
+        String headId = headId();
+        CommitGraph graph = CommitGraph.load();
+        String splitId = graph.mergeBase(headId, givenId);
+        Commit head = Commit.load(headId);
+        Commit given = Commit.load(givenId);
+        Commit split = Commit.load(splitId);
+
+        TreeMap<String, String> checkouts = new TreeMap<>();
+        TreeSet<String> removals = new TreeSet<>();
+        TreeSet<String> conflicts = new TreeSet<>();
+        TreeMap<String, String> givenWrites = new TreeMap<>();
+        List<String> givenDeletes = new ArrayList<>();
+        Tree.diff(split.getTree(), given.getTree(), givenWrites,
+                  givenDeletes);
+        TreeSet<String> names = new TreeSet<>(givenWrites.keySet());
+        names.addAll(givenDeletes);
+        for (String name : names) {
+            String s = split.getBlob(name);
+            String h = head.getBlob(name);
+            String g = given.getBlob(name);
+            if (Objects.equals(g, h) || Objects.equals(g, s)) {
+                continue;
+            } else if (Objects.equals(h, s)) {
+                if (g == null) {
+                    removals.add(name);
+                } else {
+                    checkouts.put(name, g);
+                }
+            } else {
+                conflicts.add(name);
+            }
+        }
+        TreeSet<String> changed = new TreeSet<>(checkouts.keySet());
+        changed.addAll(removals);
+        changed.addAll(conflicts);
+        checkUntracked(head, stage, changed);
+
+        if (splitId.equals(givenId)) {
+            message("Given branch is an ancestor of the current branch.");
+            return;
+        }
+        if (splitId.equals(headId)) {
+            checkoutBranch(branch);
+            message("Current branch fast-forwarded.");
+            return;
+        }
+
+        for (Map.Entry<String, String> entry : checkouts.entrySet()) {
+            checkoutBlob(entry.getValue(), join(CWD, entry.getKey()));
+            stage.add(entry.getKey(), entry.getValue());
+        }
+        for (String name : removals) {
+            deleteWorkingFile(name);
+            stage.remove(name);
+        }
+        boolean conflicted = false;
+        for (String name : conflicts) {
+            String h = head.getBlob(name);
+            File file = join(CWD, name);
+            conflicted |= mergeFile(split.getBlob(name), h,
+                                    given.getBlob(name), file);
+            stage.add(name, ObjectStore.writeBlob(file, h));
+        }
+        stage.save();
+        commit(String.format("Merged %s into %s.", branch, currentBranch()),
+               givenId);
+        if (conflicted) {
+            message("Encountered a merge conflict.");
+        }
+    }
+
+    /** Write to FILE the line-by-line merge of the blobs HEAD and GIVEN,
+     *  whose common ancestor is the blob SPLIT, and return true iff it has
+     *  conflicts.  A null blob stands for a missing file.  Only the lines
+     *  both sides changed differently are put between conflict markers,
+     *  and the result is streamed to FILE as it is worked out. */
+    static boolean mergeFile(String split, String head, String given,
+                             File file) {
+        file.getParentFile().mkdirs();
+        Lines s = blobLines(split), h = blobLines(head),
+            g = blobLines(given);
+        try (OutputStream out =
+                 new BufferedOutputStream(new FileOutputStream(file),
+                                          1 << 16)) {
+            return Diff3.merge(s, h, g, out);
+        } catch (IOException excp) {
+            throw error("Cannot write %s: %s", file.getName(),
+                        excp.getMessage());
+        } finally {
+            s.close();
+            h.close();
+            g.close();
+        }
+    }
+
+    /** Returns the lines of the blob with id BLOB, or no lines if BLOB is
+     *  null.  A chunked blob is copied to a temporary file, one chunk at a
+     *  time, and its lines are read back from there, so it is never all
+     *  in memory; the file is deleted when the lines are closed. */
+    static Lines blobLines(String blob) {
+        if (blob == null) {
+            return Lines.empty();
+        } else if (!ObjectStore.isChunked(blob)) {
+            return Lines.of(readBlob(blob));
+        }
+        try {
+            File temp = File.createTempFile("blob", null, GITLET_DIR);
+            checkoutBlob(blob, temp);
+            return Lines.ofTemporary(temp);
+        } catch (IOException excp) {
+            throw error("Cannot copy blob %s: %s", blob, excp.getMessage());
+        }
+    }
+
+    /** Check out all files of the commit whose id is or starts with
+     *  COMMITID and make it the head of the current branch. */
+    static void reset(String commitId) {
+        String id = resolveCommitId(commitId);
+        checkoutCommit(Commit.load(id));
+        setBranchHead(currentBranch(), id);
+    }
+
+    /** Make the working directory match TARGET, starting from the head
+     *  commit, and clear the staging area.  Only files whose blobs differ
+     *  between the two commits are touched: files TARGET tracks with a
+     *  different blob, or that the head does not track, are written, and
+     *  files only the head tracks are deleted.  As in Git, a file both
+     *  commits track with the same blob is left as it is, and directories
+     *  whose trees are equal are not even read.  The changes are all
+     *  worked out, and checked for untracked files in the way, before any
+     *  is made; deletions come first, so a directory may replace a file
+     *  of the same name. */
+    static void checkoutCommit(Commit target) {
+        StagingArea stage = StagingArea.load();
+        Commit head = headCommit();
+        TreeMap<String, String> writes = new TreeMap<>();
+        List<String> deletes = new ArrayList<>();
+        Tree.diff(head.getTree(), target.getTree(), writes, deletes);
+        checkUntracked(head, stage, writes.keySet());
+        StatCache stats = StatCache.load();
+        for (String name : deletes) {
+            deleteWorkingFile(name);
+        }
+        for (Map.Entry<String, String> entry : writes.entrySet()) {
+            checkoutBlob(entry.getValue(), join(CWD, entry.getKey()));
+            stats.record(entry.getKey(), entry.getValue());
+        }
+        stage.clear();
+        stage.save();
+        stats.save();
+    }
+
+    /** Throw a GitletException if any of the working files NAMES is
+     *  untracked, that is, neither tracked by HEAD nor staged for addition
+     *  in STAGE, and so would be overwritten or deleted. */
+    static void checkUntracked(Commit head, StagingArea stage,
+                               Collection<String> names) {
+        for (String name : names) {
+            if (head.getBlob(name) == null
+                && !stage.getAdded().containsKey(name)
+                && join(CWD, name).isFile()) {
+                throw error("There is an untracked file in the way; "
+                            + "delete it, or add and commit it first.");
+            }
+        }
+    }
+
+    /** Record the repository whose .gitlet directory is PATH as the remote
+     *  called NAME. */
+    static void addRemote(String name, String path) {
+        Remote.add(name, path);
+    }
+
+    /** Forget the remote called NAME. */
+    static void rmRemote(String name) {
+        Remote.remove(name);
+    }
+
+    /** Bring down the commits of BRANCH of the remote called REMOTE that
+     *  are missing here, into the branch REMOTE/BRANCH. */
+    static void fetch(String remote, String branch) {
+        Remote.get(remote).fetch(branch);
+    }
+
+    /** Send the commits of the current branch that BRANCH of the remote
+     *  called REMOTE lacks, and make the head commit its head. */
+    static void push(String remote, String branch) {
+        Remote.get(remote).push(branch);
+    }
+
+    /** Fetch BRANCH of the remote called REMOTE and merge it into the
+     *  current branch. */
+    static void pull(String remote, String branch) {
+        fetch(remote, branch);
+        merge(remote + "/" + branch);
+    }
+
+    /** Fold all loose objects into the object pack, and all loose
+     *  branches into the packed refs. */
+    static void repack() {
+        ObjectStore.repack();
+        RefStore.pack();
+    }
+
+    /** Delete the objects that no commit, branch or staged file can reach,
+     *  and report what was kept and removed and how long it took. */
+    static void gc() {
+        GarbageCollector collector = new GarbageCollector();
+        collector.collect();
+        message("Marked %d of %d objects in %d ms.", collector.marked(),
+                collector.objects(), collector.markMillis());
+        message("Removed %d objects, reclaiming %d bytes, in %d ms.",
+                collector.removed(), collector.reclaimed(),
+                collector.sweepMillis());
+    }
+
+    /** Move the loose objects of a repository made by an older version of
+     *  Gitlet into shard directories, and report how many were moved. */
+    static void migrateObjects() {
+        message("Migrated %d objects.", ObjectStore.migrate());
+    }
+
+    /** Returns the contents of the blob with id BLOB. */
+    static byte[] readBlob(String blob) {
+        byte[] contents = ObjectStore.read(blob, ObjectStore.BLOB);
+        if (contents == null) {
+            throw error("Missing blob %s.", blob);
+        }
+        return contents;
+    }
+
+    /** Returns the full id of the commit whose id is or starts with
+     *  COMMITID.  Abbreviated ids are looked up in the commit graph.
+     *  Throws a GitletException if there is no such commit or if the
+     *  abbreviation is ambiguous. */
+    static String resolveCommitId(String commitId) {
+        String id = commitId.length() == UID_LENGTH
+            ? commitId : CommitGraph.load().resolve(commitId);
+        if (id == null || Commit.load(id) == null) {
+            throw error("No commit with that id exists.");
+        }
+        return id;
+    }
+
+    /** Returns the id of the head commit of the branch named NAME, if
+     *  there is one, and otherwise of the commit whose id is or starts
+     *  with NAME. */
+    static String resolveRevision(String name) {
+        String id = branchHead(name);
+        return id != null ? id : resolveCommitId(name);
+    }
+
+    /** Write the contents of the blob with id BLOB to FILE, creating its
+     *  directory if need be. */
+    static void checkoutBlob(String blob, File file) {
+        file.getParentFile().mkdirs();
+        if (!ObjectStore.copyBlob(blob, file)) {
+            throw error("Missing blob %s.", blob);
+        }
+    }
+
+    /** Delete working file NAME, a path, and then any directories that
+     *  deleting it leaves empty, up to the working directory itself. */
+    static void deleteWorkingFile(String name) {
+        File file = join(CWD, name);
+        if (!file.isDirectory()) {
+            file.delete();
+        }
+        File dir = file.getParentFile();
+        while (dir != null && !dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Returns NAME, a path to a working file, in the form used to track
+     *  it: relative to the working directory, with '/' between its
+     *  components and no "." or ".." components.  Throws a GitletException
+     *  if NAME is outside the working directory or inside .gitlet. */
+    static String trackedName(String name) {
+        Path path = CWD.toPath().relativize(
+            CWD.toPath().resolve(name).normalize());
+        String result = path.toString().replace(File.separatorChar, '/');
+        if (result.isEmpty() || result.equals("..")
+            || result.startsWith("../") || result.equals(".gitlet")
+            || result.startsWith(".gitlet/")) {
+            throw error("File does not exist.");
+        }
+        return result;
+    }
+
+    /** Returns the names of all branches in increasing order, those
+     *  fetched from a remote being named REMOTE/BRANCH. */
+    static List<String> branchNames() {
+        return new ArrayList<>(RefStore.all().keySet());
+    }
+
+    /** Returns the name of the current branch. */
+    static String currentBranch() {
+        return RefStore.head();
+    }
+
+    /** Returns the id of the head commit of BRANCH, or null if there is no
+     *  such branch. */
+    static String branchHead(String branch) {
+        return RefStore.read(branch);
+    }
+
+    /** Make ID the head commit of BRANCH. */
+    static void setBranchHead(String branch, String id) {
+        RefStore.write(branch, id);
+    }
+
+    /** Returns the id of the head commit. */
+    static String headId() {
+        return branchHead(currentBranch());
+    }
+
+    /** Returns the head commit. */
+    static Commit headCommit() {
+        return Commit.load(headId());
+    }
 
-    /* TODO: fill in the rest of this class. */
+    /** Returns the tracked files of the head commit merged with the
+     *  staging area STAGE: the files the next commit would track. */
+    static TreeMap<String, String> stagedSnapshot(StagingArea stage) {
+        TreeMap<String, String> result =
+            new TreeMap<>(headCommit().getBlobs());
+        result.putAll(stage.getAdded());
+        result.keySet().removeAll(stage.getRemoved());
+        return result;
+    }
 }
@@ -0,0 +1,328 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** The staging area of a Gitlet repository: the files staged for addition,
+ *  each with the id of its staged blob, and the files staged for removal.
+ *
+ *  It is kept in .gitlet/staging between commands as an append-only
+ *  journal: a header (magic, version) followed by one record per change,
+ *
+ *      1 byte           ADD, REMOVE or UNSTAGE
+ *      varint + UTF-8   file name
+ *      20 bytes         raw blob id, for ADD only
+ *
+ *  and loading replays the records in order.  Changes made by a command
+ *  are collected and appended by save in one write and one fsync, so
+ *  staging a file costs one short record however many files are staged,
+ *  and a single add of many files is made durable once.  The journal is
+ *  compacted, by writing the current entries to a temporary file and
+ *  renaming it into place, when the staging area is cleared (as at every
+ *  commit) and when superseded records outnumber live ones.  A record cut
+ *  short by a crash is ignored and overwritten by the next save.
+ *
+ *  In batch mode (see Main) the staging area last loaded or saved is kept,
+ *  and the next load returns it without reading the journal if the file
+ *  has the same file key, size and modification time as it had then.
+ *
+ *  Repositories made before the journal kept a serialized StagingArea in
+ *  .gitlet/staging; such a file is still read, and is replaced by a
+ *  journal when next saved.
+ */
+class StagingArea implements Dumpable {
+
+    /** File holding the staging area between commands. */
+    static final File STAGING_FILE = join(GITLET_DIR, "staging");
+    /** Magic number at the start of STAGING_FILE. */
+    private static final int MAGIC = 0x474c5354;
+    /** Format version of STAGING_FILE. */
+    private static final int VERSION = 1;
+    /** Size of the header of STAGING_FILE. */
+    private static final int HEADER_SIZE = 8;
+    /** Record staging a file for addition. */
+    private static final byte ADD = 1;
+    /** Record staging a file for removal. */
+    private static final byte REMOVE = 2;
+    /** Record removing a file from the staging area. */
+    private static final byte UNSTAGE = 3;
+    /** The journal is compacted when it holds more than this many records
+     *  and more than twice as many as there are live entries. */
+    private static final int MIN_COMPACT_RECORDS = 64;
+    /** That of the serialized form written before the journal existed. */
+    private static final long serialVersionUID = 8819702789006432021L;
+
+    /** The staging area last loaded or saved in this process, or null. */
+    private static StagingArea last;
+
+    /** Files staged for addition, mapped to their blob ids. */
+    private final TreeMap<String, String> added = new TreeMap<>();
+    /** Files staged for removal. */
+    private final TreeSet<String> removed = new TreeSet<>();
+    /** Records of the changes not yet saved. */
+    private transient ByteArrayOutputStream pending;
+    /** True iff the journal must be rewritten on the next save. */
+    private transient boolean compact;
+    /** Number of records in the journal. */
+    private transient int records;
+    /** Length of the valid part of the journal. */
+    private transient long length;
+    /** Stat data of the journal as of the last load or save. */
+    private transient BasicFileAttributes saved;
+
+    /** An empty staging area whose journal must be written in full. */
+    private StagingArea() {
+        pending = new ByteArrayOutputStream();
+        compact = true;
+    }
+
+    /** Returns the saved staging area, or an empty one if there is none. */
+    static StagingArea load() {
+        if (!STAGING_FILE.isFile()) {
+            return new StagingArea();
+        }
+        BasicFileAttributes attrs = stat();
+        if (last != null && last.isSavedAs(attrs)) {
+            return last;
+        }
+        byte[] journal = readContents(STAGING_FILE);
+        ByteBuffer in = ByteBuffer.wrap(journal);
+        if (journal.length < HEADER_SIZE || in.getInt() != MAGIC) {
+            return legacy();
+        } else if (in.getInt() != VERSION) {
+            throw error("Unknown staging area format.");
+        }
+        StagingArea result = new StagingArea();
+        result.compact = false;
+        result.length = HEADER_SIZE;
+        result.replay(in);
+        result.saved = attrs;
+        last = result;
+        return result;
+    }
+
+    /** Save the changes made to this staging area since it was loaded or
+     *  last saved, appending them to the journal or, if it is due,
+     *  rewriting it, and force them to disk. */
+    void save() {
+        if (!compact && records > MIN_COMPACT_RECORDS
+            && records > 2 * (added.size() + removed.size())) {
+            compact = true;
+        }
+        if (compact) {
+            rewrite();
+        } else if (pending.size() > 0) {
+            append();
+        }
+        saved = stat();
+        last = this;
+    }
+
+    /** Stage NAME for addition with blob BLOB, cancelling any staged
+     *  removal of NAME. */
+    void add(String name, String blob) {
+        removed.remove(name);
+        if (!blob.equals(added.put(name, blob))) {
+            log(ADD, name, blob);
+        }
+    }
+
+    /** Stage NAME for removal, cancelling any staged addition of NAME. */
+    void remove(String name) {
+        added.remove(name);
+        removed.add(name);
+        log(REMOVE, name, null);
+    }
+
+    /** Remove NAME from the staging area entirely. */
+    void unstage(String name) {
+        boolean staged = added.remove(name) != null;
+        staged = removed.remove(name) || staged;
+        if (staged) {
+            log(UNSTAGE, name, null);
+        }
+    }
+
+    /** Empty the staging area. */
+    void clear() {
+        added.clear();
+        removed.clear();
+        pending.reset();
+        compact = true;
+    }
+
+    /** Returns true iff nothing is staged. */
+    boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    /** Returns the files staged for addition, mapped to their blob ids. */
+    Map<String, String> getAdded() {
+        return added;
+    }
+
+    /** Returns the files staged for removal. */
+    Set<String> getRemoved() {
+        return removed;
+    }
+
+    @Override
+    public void dump() {
+        System.out.printf("added: %s%nremoved: %s%n", added, removed);
+    }
+
+    /** Returns the staging area saved by an older version of Gitlet as a
+     *  serialized object, to be rewritten as a journal when saved. */
+    private static StagingArea legacy() {
+        StagingArea result = readObject(STAGING_FILE, StagingArea.class);
+        result.pending = new ByteArrayOutputStream();
+        result.compact = true;
+        last = null;
+        return result;
+    }
+
+    /** Returns true iff I have no unsaved changes and the journal, whose
+     *  stat data are ATTRS, is as I last loaded or saved it. */
+    private boolean isSavedAs(BasicFileAttributes attrs) {
+        return !compact && pending.size() == 0 && saved != null
+            && attrs.size() == length
+            && Objects.equals(attrs.fileKey(), saved.fileKey())
+            && attrs.lastModifiedTime().equals(saved.lastModifiedTime());
+    }
+
+    /** Add a record of type TYPE for NAME, with blob id BLOB if it is not
+     *  null, to the pending records. */
+    private void log(byte type, String name, String blob) {
+        if (compact) {
+            return;
+        }
+        writeRecord(pending, type, name, blob);
+        records += 1;
+    }
+
+    /** Write a record of type TYPE for NAME, with blob id BLOB if it is
+     *  not null, to OUT. */
+    private static void writeRecord(ByteArrayOutputStream out, byte type,
+                                    String name, String blob) {
+        out.write(type);
+        writeString(out, name);
+        if (blob != null) {
+            out.writeBytes(fromHex(blob));
+        }
+    }
+
+    /** Apply the records in IN, which follow the first LENGTH bytes of
+     *  the journal, stopping at the end or at a record cut short, and
+     *  advance LENGTH past those applied. */
+    private void replay(ByteBuffer in) {
+        int start = in.position();
+        try {
+            while (in.hasRemaining()) {
+                byte type = in.get();
+                String name = readString(in);
+                switch (type) {
+                    case ADD:
+                        String blob = toHex(in.array(), in.position());
+                        in.position(in.position() + PackFile.ID_SIZE);
+                        removed.remove(name);
+                        added.put(name, blob);
+                        break;
+                    case REMOVE:
+                        added.remove(name);
+                        removed.add(name);
+                        break;
+                    case UNSTAGE:
+                        added.remove(name);
+                        removed.remove(name);
+                        break;
+                    default:
+                        throw new IllegalArgumentException();
+                }
+                records += 1;
+                length += in.position() - start;
+                start = in.position();
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | IllegalArgumentException excp) {
+            /* A torn final record: the rest is ignored. */
+        }
+    }
+
+    /** Append the pending records to the journal, over any torn record
+     *  at its end, and force them to disk. */
+    private void append() {
+        byte[] data = pending.toByteArray();
+        try (FileChannel out = FileChannel.open(STAGING_FILE.toPath(),
+                                                StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                out.write(buf, length + buf.position());
+            }
+            out.truncate(length + data.length);
+            out.force(false);
+        } catch (IOException excp) {
+            throw error("Cannot save staging area: %s", excp.getMessage());
+        }
+        length += data.length;
+        pending.reset();
+    }
+
+    /** Replace the journal with one holding just the current entries. */
+    private void rewrite() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC)
+                       .putInt(VERSION).array());
+        for (Map.Entry<String, String> entry : added.entrySet()) {
+            writeRecord(out, ADD, entry.getKey(), entry.getValue());
+        }
+        for (String name : removed) {
+            writeRecord(out, REMOVE, name, null);
+        }
+        File tmp = join(GITLET_DIR, "staging.tmp");
+        try (FileChannel chan =
+                 FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(out.toByteArray());
+            while (buf.hasRemaining()) {
+                chan.write(buf);
+            }
+            chan.force(false);
+            Files.move(tmp.toPath(), STAGING_FILE.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Cannot save staging area: %s", excp.getMessage());
+        }
+        records = added.size() + removed.size();
+        length = out.size();
+        pending.reset();
+        compact = false;
+    }
+
+    /** Returns the stat data of STAGING_FILE. */
+    private static BasicFileAttributes stat() {
+        try {
+            return Files.readAttributes(STAGING_FILE.toPath(),
+                                        BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw error("Cannot read staging area: %s", excp.getMessage());
+        }
+    }
+}
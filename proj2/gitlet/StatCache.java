@@ -0,0 +1,347 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** A cache of the blob ids of working files, keyed by their stat data.
+ *
+ *  For each working file whose id has been computed, the cache records the
+ *  file's size, modification time and a hash of its file key (on Unix, its
+ *  device and inode) next to the id.  Asking for the id of a file whose
+ *  stat data still match costs one stat call instead of reading and
+ *  hashing the whole file.  This is the same idea as the stat information
+ *  in Git's index.
+ *
+ *  A file modified in the same clock tick as the cache was written could
+ *  change without its size or modification time changing.  As in Git,
+ *  entries whose modification time is not older than the cache file itself
+ *  are therefore treated as suspect and rehashed.
+ *
+ *  The cache lives in .gitlet/stat-cache as a header (magic, version)
+ *  followed by entries:
+ *
+ *      varint + UTF-8   file name
+ *      varint           size in bytes
+ *      varint           modification time in nanoseconds since the epoch
+ *      varint           hash code of the file key, 0 if there is none
+ *      20 bytes         raw blob id
+ *
+ *  A later entry for a name replaces an earlier one, so a command that
+ *  only adds or updates entries appends them, and one add costs a short
+ *  write however many files are cached.  Appending moves the modification
+ *  time of the file just as rewriting it does.  The file is rewritten
+ *  with one entry per file when entries are removed, when superseded
+ *  entries outnumber live ones, or when its end was cut short.  In batch
+ *  mode the cache last loaded or saved is reused if the file still has
+ *  the file key, size and modification time it had then.
+ */
+class StatCache {
+
+    /** File holding the cache between commands. */
+    static final File STAT_CACHE_FILE = join(GITLET_DIR, "stat-cache");
+    /** Magic number at the start of STAT_CACHE_FILE. */
+    private static final int MAGIC = 0x474c5343;
+    /** Format version of STAT_CACHE_FILE. */
+    private static final int VERSION = 1;
+    /** The file is rewritten when it holds more than this many entries
+     *  and more than twice as many as are live. */
+    private static final int MIN_COMPACT_ENTRIES = 64;
+
+    /** The cache last loaded or saved in this process, or null. */
+    private static StatCache last;
+
+    /** Entries of the cache, by file name. */
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    /** Modification time of the cache file when it was loaded, in
+     *  nanoseconds since the epoch.  Entries not older than this are
+     *  racy. */
+    private long writeTime;
+    /** True iff entries have changed since the cache was loaded. */
+    private boolean changed;
+    /** Names whose entries must be appended to the file. */
+    private final HashSet<String> dirty = new HashSet<>();
+    /** True iff the file must be rewritten rather than appended to. */
+    private boolean rewrite;
+    /** Number of entries in the file, live or superseded. */
+    private int stored;
+    /** Stat data of the file as of the last load or save, or null. */
+    private BasicFileAttributes saved;
+
+    /** The stat data and blob id of one working file. */
+    private static class Entry {
+        /** Size of the file in bytes. */
+        private final long size;
+        /** Modification time of the file, in nanoseconds since the epoch. */
+        private final long mtime;
+        /** Hash code of the file key of the file, or 0 if there is none. */
+        private final int fileKey;
+        /** The blob id of the contents of the file. */
+        private final String blob;
+
+        /** An entry for a file with stat data SIZE, MTIME and FILEKEY whose
+         *  contents have blob id BLOB. */
+        Entry(long size, long mtime, int fileKey, String blob) {
+            this.size = size;
+            this.mtime = mtime;
+            this.fileKey = fileKey;
+            this.blob = blob;
+        }
+
+        /** Returns true iff I describe a file whose stat data are ATTRS. */
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && mtime == mtimeOf(attrs)
+                && fileKey == fileKeyOf(attrs);
+        }
+    }
+
+    /** An empty cache whose file was written at WRITETIME. */
+    private StatCache(long writeTime) {
+        this.writeTime = writeTime;
+        this.rewrite = true;
+    }
+
+    /** Returns the saved cache, or an empty one if there is none or it
+     *  cannot be read. */
+    static StatCache load() {
+        if (!STAT_CACHE_FILE.isFile()) {
+            return new StatCache(Long.MIN_VALUE);
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = stat(STAT_CACHE_FILE);
+        } catch (IOException excp) {
+            return new StatCache(Long.MIN_VALUE);
+        }
+        if (last != null && last.isSavedAs(attrs)) {
+            last.writeTime = mtimeOf(attrs);
+            return last;
+        }
+        StatCache result = new StatCache(mtimeOf(attrs));
+        try {
+            ByteBuffer in = ByteBuffer.wrap(readContents(STAT_CACHE_FILE));
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return new StatCache(Long.MIN_VALUE);
+            }
+            while (in.hasRemaining()) {
+                String name = readString(in);
+                long size = readVarint(in);
+                long mtime = readVarint(in);
+                int fileKey = (int) readVarint(in);
+                String blob = toHex(in.array(), in.position());
+                in.position(in.position() + PackFile.ID_SIZE);
+                result.entries.put(name,
+                                   new Entry(size, mtime, fileKey, blob));
+                result.stored += 1;
+            }
+            result.rewrite = false;
+        } catch (IllegalArgumentException | BufferUnderflowException
+                 | IndexOutOfBoundsException excp) {
+            result.changed = true;
+        }
+        result.saved = attrs;
+        last = result;
+        return result;
+    }
+
+    /** Returns the blob id of the contents of working file NAME, or null if
+     *  there is no such file.  The file is only read and hashed if its stat
+     *  data differ from those recorded for it. */
+    String blobId(String name) {
+        try {
+            return blobId(name, stat(join(CWD, name)));
+        } catch (IOException excp) {
+            if (entries.remove(name) != null) {
+                changed = true;
+                rewrite = true;
+            }
+            return null;
+        }
+    }
+
+    /** Returns the blob id of the contents of working file NAME, whose stat
+     *  data are ATTRS, or null if it is not a plain file.  The file is only
+     *  read and hashed if ATTRS differ from the data recorded for it. */
+    String blobId(String name, BasicFileAttributes attrs) {
+        if (!attrs.isRegularFile()) {
+            return null;
+        }
+        Entry entry = entries.get(name);
+        if (entry != null && entry.matches(attrs)
+            && entry.mtime < writeTime) {
+            return entry.blob;
+        }
+        String blob = sha1(join(CWD, name));
+        record(name, attrs, blob);
+        return blob;
+    }
+
+    /** Returns a map from each of NAMES that is a plain file in WORKING,
+     *  which maps working file names to their stat data, to its blob id.
+     *  Files whose ids are not cached are read and hashed in parallel on
+     *  the WorkingTree pool. */
+    TreeMap<String, String> blobIds(Collection<String> names,
+                                    Map<String, BasicFileAttributes> working) {
+        String[] nameList = names.toArray(new String[0]);
+        String[] blobs = new String[nameList.length];
+        boolean[] hashed = new boolean[nameList.length];
+        WorkingTree.forEach(nameList.length, i -> {
+            BasicFileAttributes attrs = working.get(nameList[i]);
+            if (attrs == null || !attrs.isRegularFile()) {
+                return;
+            }
+            Entry entry = entries.get(nameList[i]);
+            if (entry != null && entry.matches(attrs)
+                && entry.mtime < writeTime) {
+                blobs[i] = entry.blob;
+            } else {
+                blobs[i] = sha1(join(CWD, nameList[i]));
+                hashed[i] = true;
+            }
+        });
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int i = 0; i < nameList.length; i += 1) {
+            if (hashed[i]) {
+                record(nameList[i], working.get(nameList[i]), blobs[i]);
+            }
+            if (blobs[i] != null) {
+                result.put(nameList[i], blobs[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Record that working file NAME, which has just been written or
+     *  hashed, has contents with id BLOB. */
+    void record(String name, String blob) {
+        try {
+            record(name, stat(join(CWD, name)), blob);
+        } catch (IOException excp) {
+            entries.remove(name);
+            changed = true;
+            rewrite = true;
+        }
+    }
+
+    /** Save the cache if it has changed since it was loaded, by appending
+     *  the new entries or, if that will not do, rewriting the file.
+     *  Either moves its modification time past that of any entry found
+     *  racy during this command. */
+    void save() {
+        if (!changed) {
+            return;
+        }
+        if (stored + dirty.size() > MIN_COMPACT_ENTRIES
+            && stored + dirty.size() > 2 * entries.size()) {
+            rewrite = true;
+        }
+        if (rewrite) {
+            ByteArrayOutputStream out =
+                new ByteArrayOutputStream(8 + 64 * entries.size());
+            out.writeBytes(ByteBuffer.allocate(8).putInt(MAGIC)
+                           .putInt(VERSION).array());
+            for (String name : entries.keySet()) {
+                writeEntry(out, name);
+            }
+            File tmp = join(GITLET_DIR, "stat-cache.tmp");
+            writeContents(tmp, (Object) out.toByteArray());
+            try {
+                Files.move(tmp.toPath(), STAT_CACHE_FILE.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw error("Cannot save stat cache: %s", excp.getMessage());
+            }
+            stored = entries.size();
+        } else {
+            ByteArrayOutputStream out =
+                new ByteArrayOutputStream(64 * dirty.size());
+            for (String name : dirty) {
+                writeEntry(out, name);
+            }
+            try {
+                Files.write(STAT_CACHE_FILE.toPath(), out.toByteArray(),
+                            StandardOpenOption.APPEND);
+            } catch (IOException excp) {
+                throw error("Cannot save stat cache: %s", excp.getMessage());
+            }
+            stored += dirty.size();
+        }
+        changed = rewrite = false;
+        dirty.clear();
+        try {
+            saved = stat(STAT_CACHE_FILE);
+            last = this;
+        } catch (IOException excp) {
+            last = null;
+        }
+    }
+
+    /** Write the entry for NAME to OUT. */
+    private void writeEntry(ByteArrayOutputStream out, String name) {
+        Entry entry = entries.get(name);
+        writeString(out, name);
+        writeVarint(out, entry.size);
+        writeVarint(out, entry.mtime);
+        writeVarint(out, entry.fileKey & 0xffffffffL);
+        out.writeBytes(fromHex(entry.blob));
+    }
+
+    /** Returns true iff I have no unsaved changes and my file, whose stat
+     *  data are ATTRS, is as I last loaded or saved it. */
+    private boolean isSavedAs(BasicFileAttributes attrs) {
+        return !changed && saved != null && attrs.size() == saved.size()
+            && Objects.equals(attrs.fileKey(), saved.fileKey())
+            && attrs.lastModifiedTime().equals(saved.lastModifiedTime());
+    }
+
+    /** Record that the file NAME, whose stat data are ATTRS, has contents
+     *  with id BLOB.  An entry that was racy is saved again even if it is
+     *  unchanged, so that saving moves the cache file's modification time
+     *  past it and it is not rehashed by every later command. */
+    private void record(String name, BasicFileAttributes attrs,
+                        String blob) {
+        Entry entry = entries.get(name);
+        if (entry == null || !entry.matches(attrs)
+            || !entry.blob.equals(blob) || entry.mtime >= writeTime) {
+            entries.put(name, new Entry(attrs.size(), mtimeOf(attrs),
+                                        fileKeyOf(attrs), blob));
+            changed = true;
+            dirty.add(name);
+        }
+    }
+
+    /** Returns the stat data of FILE. */
+    private static BasicFileAttributes stat(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    }
+
+    /** Returns the modification time in ATTRS in nanoseconds since the
+     *  epoch. */
+    private static long mtimeOf(BasicFileAttributes attrs) {
+        return attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    /** Returns the hash code of the file key in ATTRS, or 0 if it has
+     *  none. */
+    private static int fileKeyOf(BasicFileAttributes attrs) {
+        return Objects.hashCode(attrs.fileKey());
+    }
+}
@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+/** Compares CommitCodec with Java serialization (Utils.serialize and
+ *  Utils.deserialize) on commits tracking various numbers of files.
+ *  Usage: java gitlet.TimeCommitCodec [COMMITS]
+ *  where COMMITS (default 2000) is the number of commits encoded and
+ *  decoded for each table row.
+ */
+public class TimeCommitCodec {
+
+    /** Numbers of tracked files per commit to time. */
+    private static final int[] FILE_COUNTS = { 0, 10, 100, 1000 };
+
+    public static void main(String[] args) {
+        int numCommits = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        for (int files : FILE_COUNTS) {
+            Commit[] warmup = makeCommits(numCommits, files);
+            for (Commit commit : warmup) {
+                Utils.deserialize(Utils.serialize(commit), Commit.class);
+                CommitCodec.decode(CommitCodec.encode(commit));
+            }
+        }
+        System.out.printf("%8s %12s %12s %12s %12s%n", "files", "format",
+                          "encode (us)", "decode (us)", "bytes");
+        System.out.printf("------------------------------------------------"
+                          + "-------------%n");
+        for (int files : FILE_COUNTS) {
+            Commit[] commits = makeCommits(numCommits, files);
+            timeSerialization(commits, files);
+            timeCodec(commits, files);
+        }
+    }
+
+    /** Returns N commits, each in a chain after the last, tracking FILES
+     *  files with random blob ids. */
+    private static Commit[] makeCommits(int n, int files) {
+        Random random = new Random(61);
+        Commit[] result = new Commit[n];
+        String parent = randomId(random);
+        for (int i = 0; i < n; i += 1) {
+            TreeMap<String, String> blobs = new TreeMap<>();
+            for (int k = 0; k < files; k += 1) {
+                blobs.put("file" + k + ".txt", randomId(random));
+            }
+            result[i] = new Commit("commit number " + i,
+                                   1_600_000_000_000L + i * 60_000L,
+                                   parent, null, blobs);
+            parent = randomId(random);
+        }
+        return result;
+    }
+
+    /** Returns a random UID drawn from RANDOM. */
+    private static String randomId(Random random) {
+        byte[] raw = new byte[Utils.UID_LENGTH / 2];
+        random.nextBytes(raw);
+        return Utils.toHex(raw, 0);
+    }
+
+    /** Time Java serialization of COMMITS, which track FILES files. */
+    private static void timeSerialization(Commit[] commits, int files) {
+        byte[][] encoded = new byte[commits.length][];
+        long start = System.nanoTime();
+        for (int i = 0; i < commits.length; i += 1) {
+            encoded[i] = Utils.serialize(commits[i]);
+        }
+        long encodeTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (byte[] bytes : encoded) {
+            Utils.deserialize(bytes, Commit.class);
+        }
+        long decodeTime = System.nanoTime() - start;
+        printRow(files, "serialize", encodeTime, decodeTime, encoded);
+    }
+
+    /** Time CommitCodec on COMMITS, which track FILES files. */
+    private static void timeCodec(Commit[] commits, int files) {
+        byte[][] encoded = new byte[commits.length][];
+        long start = System.nanoTime();
+        for (int i = 0; i < commits.length; i += 1) {
+            encoded[i] = CommitCodec.encode(commits[i]);
+        }
+        long encodeTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (byte[] bytes : encoded) {
+            CommitCodec.decode(bytes);
+        }
+        long decodeTime = System.nanoTime() - start;
+        printRow(files, "codec", encodeTime, decodeTime, encoded);
+    }
+
+    /** Print one table row for FORMAT on commits tracking FILES files,
+     *  given the total ENCODETIME and DECODETIME in nanoseconds and the
+     *  ENCODED commits. */
+    private static void printRow(int files, String format, long encodeTime,
+                                 long decodeTime, byte[][] encoded) {
+        long bytes = 0;
+        for (byte[] e : encoded) {
+            bytes += e.length;
+        }
+        int n = encoded.length;
+        System.out.printf("%8d %12s %12.2f %12.2f %12d%n", files, format,
+                          encodeTime / 1e3 / n, decodeTime / 1e3 / n,
+                          bytes / n);
+    }
+}
@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/** Compares the cost of committing a change to one file of a large
+ *  snapshot when the commit holds its whole file table (the form of
+ *  commits made before trees) and when it holds the id of a Tree.
+ *  Usage: java gitlet.TimeTreeCommit [COMMITS]
+ *  where COMMITS (default 200) is the number of commits made for each
+ *  table row.  It creates its repository in a new temporary directory,
+ *  which it deletes when done.
+ */
+public class TimeTreeCommit {
+
+    /** Number of files in each snapshot. */
+    private static final int FILES = 10_000;
+    /** Numbers of directories the files are spread over. */
+    private static final int[] DIR_COUNTS = { 1, 100 };
+
+    public static void main(String[] args) {
+        int numCommits = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Path dir = makeTempDir();
+        try {
+            run(numCommits);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Makes a temporary directory and makes it the working directory of
+     *  Repository, which reads "user.dir" when it is first loaded, so this
+     *  must come before any use of Repository.  Returns the directory. */
+    private static Path makeTempDir() {
+        try {
+            Path dir = Files.createTempDirectory("gitlet-time-tree");
+            System.setProperty("user.dir", dir.toString());
+            return dir;
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Deletes DIR and everything under it. */
+    private static void delete(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(p -> p.toFile().delete());
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Creates a repository and prints the table for NUMCOMMITS commits
+     *  per row. */
+    private static void run(int numCommits) {
+        Repository.init();
+        timeFlat(numCommits, 1, new Random(17));
+        timeTree(numCommits, 1, new Random(17));
+        System.out.printf("%8s %8s %12s %12s %12s%n", "files", "dirs",
+                          "format", "commit (ms)", "bytes");
+        System.out.printf("------------------------------------------------"
+                          + "----------%n");
+        for (int dirs : DIR_COUNTS) {
+            printRow(dirs, "flat",
+                     timeFlat(numCommits, dirs, new Random(61)), numCommits);
+            printRow(dirs, "tree",
+                     timeTree(numCommits, dirs, new Random(61)), numCommits);
+        }
+    }
+
+    /** Returns the paths of FILES files spread evenly over DIRS
+     *  directories, mapped to random blob ids drawn from RANDOM. */
+    private static TreeMap<String, String> makeFiles(int dirs,
+                                                     Random random) {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int k = 0; k < FILES; k += 1) {
+            String dir = dirs == 1 ? "" : "dir" + (k % dirs) + "/";
+            result.put(dir + "file" + k + ".txt", randomId(random));
+        }
+        return result;
+    }
+
+    /** Returns the paths of the files of FILES to change in each of N
+     *  commits, spread over the whole snapshot. */
+    private static String[] changed(TreeMap<String, String> files, int n) {
+        String[] names = files.keySet().toArray(new String[0]);
+        String[] result = new String[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = names[(int) (i * 7919L % names.length)];
+        }
+        return result;
+    }
+
+    /** Returns a random UID drawn from RANDOM. */
+    private static String randomId(Random random) {
+        byte[] raw = new byte[Utils.UID_LENGTH / 2];
+        random.nextBytes(raw);
+        return Utils.toHex(raw, 0);
+    }
+
+    /** Make N commits, each changing one file of a snapshot of files in
+     *  DIRS directories, that hold their whole file tables, drawing blob ids
+     *  from RANDOM.  Returns the time taken in nanoseconds and the number
+     *  of bytes written. */
+    private static long[] timeFlat(int n, int dirs, Random random) {
+        TreeMap<String, String> files = makeFiles(dirs, random);
+        String parent = new Commit("base", 0, null, null, files).save();
+        String[] names = changed(files, n);
+        long size = objectBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            files = new TreeMap<>(files);
+            files.put(names[i], randomId(random));
+            parent = new Commit("commit " + i, i, parent, null, files).save();
+        }
+        return new long[] { System.nanoTime() - start, objectBytes() - size };
+    }
+
+    /** Make N commits, each changing one file of a snapshot of files in
+     *  DIRS directories, that hold the ids of their trees, drawing blob ids
+     *  from RANDOM.  Returns the time taken in nanoseconds and the number
+     *  of bytes written. */
+    private static long[] timeTree(int n, int dirs, Random random) {
+        TreeMap<String, String> files = makeFiles(dirs, random);
+        String tree = Tree.write(files);
+        String parent = new Commit("base", 0, null, null, tree).save();
+        String[] names = changed(files, n);
+        long size = objectBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            tree = Tree.update(tree, Map.of(names[i], randomId(random)),
+                               List.of());
+            parent = new Commit("commit " + i, i, parent, null, tree).save();
+        }
+        return new long[] { System.nanoTime() - start, objectBytes() - size };
+    }
+
+    /** Returns the total size of the files in the object store. */
+    private static long objectBytes() {
+        try (Stream<Path> paths = Files.walk(ObjectStore.OBJECTS_DIR
+                                             .toPath())) {
+            return paths.filter(Files::isRegularFile)
+                .mapToLong(p -> p.toFile().length()).sum();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Print one table row for FORMAT on snapshots in DIRS directories,
+     *  given the total time in nanoseconds and bytes written, COST, of N
+     *  commits. */
+    private static void printRow(int dirs, String format, long[] cost,
+                                 int n) {
+        System.out.printf("%8d %8d %12s %12.2f %12d%n", FILES, dirs, format,
+                          cost[0] / 1e6 / n, cost[1] / n);
+    }
+}
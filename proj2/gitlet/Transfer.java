@@ -0,0 +1,442 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** One end of a transfer of commits between two repositories, over a pair
+ *  of streams to the process running the other end.
+ *
+ *  A fetch runs upload-pack in the remote repository and a push runs
+ *  receive-pack there (see Remote); either way, one side sends the
+ *  history of a branch head and the other receives it.  After the side
+ *  holding the branch has told the other its head, the two negotiate what
+ *  the receiver already has.  The receiver sends the ids of the commits
+ *  at the heads of its branches, in rounds of at most HAVES_PER_ROUND,
+ *  and the sender answers each with whether it has that commit too.  The
+ *  receiver then goes on to the parents of each commit the sender lacks,
+ *  in decreasing order of generation in its commit graph, and stops once
+ *  every commit it still has to offer is an ancestor of one the sender
+ *  has.  So negotiation costs a round per HAVES_PER_ROUND commits that
+ *  only the receiver has, however long the shared history is.
+ *
+ *  The sender then finds in its commit graph the commits that are
+ *  ancestors of its head but not of any commit both sides have (see
+ *  CommitGraph.missing), and streams them as one pack, parents before
+ *  children.  Each commit is preceded by the trees and blobs it adds to
+ *  the snapshot of its first parent (see Tree.additions), less any
+ *  already sent, so an unchanged directory or file is never sent.  A
+ *  blob stored as a delta goes as such when the receiver has its base,
+ *  and otherwise whole.  A chunked blob goes as its list of chunks,
+ *  preceded by those of its chunks that the file's previous version does
+ *  not share, which are themselves deltas when the receiver has their
+ *  bases.  The pack is a sequence of entries
+ *
+ *      4 bytes    length of the record, L
+ *      20 bytes   raw object id
+ *      L bytes    the record, as kept by ObjectStore
+ *
+ *  ended by a length of 0.  The receiver stores each object loose as it
+ *  arrives, so the pack is never held in memory.  When a commit arrives,
+ *  everything it refers to is stored, so it is added to the commit graph
+ *  and catalog at once and its id is appended to .gitlet/incoming.  If
+ *  the transfer is interrupted, the commits listed there are offered as
+ *  well as the branch heads by the next negotiation, so a transfer that
+ *  is run again resumes after the last commit received.  The file is
+ *  deleted once the branch has been updated.
+ *
+ *  Each end counts the objects and bytes it sends or receives, and the
+ *  repository that ran the command records them, with the time taken, in
+ *  .gitlet/transfer-log.
+ */
+class Transfer {
+
+    /** File listing the commits received by an unfinished transfer. */
+    static final File INCOMING_FILE = join(GITLET_DIR, "incoming");
+    /** File to which a line is appended for each transfer. */
+    static final File LOG_FILE = join(GITLET_DIR, "transfer-log");
+    /** Most commits offered in one round of negotiation. */
+    private static final int HAVES_PER_ROUND = 64;
+    /** Size of the buffers on each stream. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Flag of a commit that has been queued for negotiation. */
+    private static final int QUEUED = 1;
+    /** Flag of a commit known to be in both repositories. */
+    private static final int COMMON = 2;
+    /** Flag of a commit that has been offered or passed over. */
+    private static final int DONE = 4;
+
+    /** Stream from the other end. */
+    private final DataInputStream in;
+    /** Stream to the other end. */
+    private final DataOutputStream out;
+    /** Number of objects sent or received. */
+    private long objects;
+    /** Number of bytes of pack sent or received. */
+    private long bytes;
+
+    /** An end of a transfer that reads from IN and writes to OUT. */
+    Transfer(InputStream in, OutputStream out) {
+        this.in = new DataInputStream(new BufferedInputStream(in,
+                                                              BUFFER_SIZE));
+        this.out = new DataOutputStream(new BufferedOutputStream(out,
+                                                                 BUFFER_SIZE));
+    }
+
+    /** Serve a fetch from another repository: send it the history of the
+     *  branch it asks for. */
+    static void uploadPack() {
+        serve(transfer -> {
+            String head = Repository.branchHead(transfer.readName());
+            transfer.writeId(head);
+            if (transfer.readGo()) {
+                CommitGraph graph = CommitGraph.load();
+                transfer.sendPack(graph, graph.row(head),
+                                  transfer.readHaves(graph));
+            }
+        });
+    }
+
+    /** Serve a push from another repository: receive the history of the
+     *  branch it sends and make that branch's head the commit it names. */
+    static void receivePack() {
+        serve(transfer -> {
+            String branch = transfer.readName();
+            transfer.writeId(Repository.branchHead(branch));
+            if (transfer.readGo()) {
+                String head = transfer.readId();
+                transfer.sendHaves();
+                transfer.readPack();
+                Repository.setBranchHead(branch, head);
+                INCOMING_FILE.delete();
+                transfer.writeDone();
+            }
+        });
+    }
+
+    /** Write NAME, a branch name, to the other end. */
+    void writeName(String name) throws IOException {
+        out.writeUTF(name);
+        out.flush();
+    }
+
+    /** Returns a branch name read from the other end. */
+    String readName() throws IOException {
+        return in.readUTF();
+    }
+
+    /** Write the commit id ID, or null, to the other end. */
+    void writeId(String id) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.write(fromHex(id));
+        }
+        out.flush();
+    }
+
+    /** Returns a commit id, or null, read from the other end. */
+    String readId() throws IOException {
+        return in.readBoolean() ? readRawId() : null;
+    }
+
+    /** Tell the other end whether to go on, as given by GO. */
+    void writeGo(boolean go) throws IOException {
+        out.writeBoolean(go);
+        out.flush();
+    }
+
+    /** Returns whether the other end is to go on. */
+    boolean readGo() throws IOException {
+        return in.readBoolean();
+    }
+
+    /** Report to the other end that I have finished. */
+    void writeDone() throws IOException {
+        out.writeBoolean(true);
+        out.flush();
+    }
+
+    /** Wait for the other end to report that it has finished. */
+    void readDone() throws IOException {
+        in.readBoolean();
+    }
+
+    /** As the receiver, offer the other end the commits at the heads of my
+     *  branches and in INCOMING_FILE and then their ancestors, as described
+     *  above, until every commit left to offer is known to be shared. */
+    void sendHaves() throws IOException {
+        CommitGraph graph = CommitGraph.load();
+        int[] flags = new int[graph.size()];
+        PriorityQueue<Integer> queue = graph.byGeneration();
+        int[] pending = new int[1];
+        for (String id : haves(graph)) {
+            offer(graph.row(id), false, flags, queue, pending);
+        }
+        List<Integer> round = new ArrayList<>(HAVES_PER_ROUND);
+        while (pending[0] > 0) {
+            round.clear();
+            while (round.size() < HAVES_PER_ROUND && pending[0] > 0) {
+                int k = queue.remove();
+                if ((flags[k] & DONE) != 0) {
+                    continue;
+                }
+                flags[k] |= DONE;
+                if ((flags[k] & COMMON) != 0) {
+                    offerParents(graph, k, true, flags, queue, pending);
+                } else {
+                    pending[0] -= 1;
+                    round.add(k);
+                }
+            }
+            out.writeInt(round.size());
+            for (int k : round) {
+                out.write(graph.rawId(k));
+            }
+            out.flush();
+            for (int k : round) {
+                boolean shared = in.readBoolean();
+                if (shared) {
+                    flags[k] |= COMMON;
+                }
+                offerParents(graph, k, shared, flags, queue, pending);
+            }
+        }
+        out.writeInt(0);
+        out.flush();
+    }
+
+    /** As the sender, answer the offers of the other end, made by
+     *  sendHaves, and return the rows in GRAPH of the commits we share. */
+    List<Integer> readHaves(CommitGraph graph) throws IOException {
+        List<Integer> result = new ArrayList<>();
+        for (int n = in.readInt(); n > 0; n = in.readInt()) {
+            for (int i = 0; i < n; i += 1) {
+                String id = readRawId();
+                boolean shared = graph.contains(id);
+                if (shared) {
+                    result.add(graph.row(id));
+                }
+                out.writeBoolean(shared);
+            }
+            out.flush();
+        }
+        return result;
+    }
+
+    /** As the sender, stream to the other end the commits of GRAPH that
+     *  are row HEAD or its ancestors but not ancestors of the rows SHARED,
+     *  with the objects they need, as described above. */
+    void sendPack(CommitGraph graph, int head, List<Integer> shared)
+        throws IOException {
+        Set<String> sent = new HashSet<>();
+        for (int k : graph.missing(head, shared)) {
+            String id = graph.id(k);
+            Commit commit = Commit.load(id);
+            String parentTree = commit.getParent() == null
+                ? null : Commit.load(commit.getParent()).getTree();
+            List<String> trees = new ArrayList<>();
+            Map<String, String> blobs = new LinkedHashMap<>();
+            Tree.additions(parentTree, commit.getTree(), trees, blobs);
+            for (Map.Entry<String, String> blob : blobs.entrySet()) {
+                String old = blob.getValue();
+                if (sent.add(blob.getKey())) {
+                    sendChunks(blob.getKey(), old, sent);
+                    sendObject(blob.getKey(), ObjectStore.exportRecord(
+                        blob.getKey(),
+                        base -> base.equals(old) || sent.contains(base)));
+                }
+            }
+            for (String tree : trees) {
+                if (sent.add(tree)) {
+                    sendObject(tree, ObjectStore.exportRecord(tree,
+                                                              b -> false));
+                }
+            }
+            sendObject(id, ObjectStore.exportRecord(id, b -> false));
+        }
+        out.writeInt(0);
+        out.flush();
+        bytes += 4;
+    }
+
+    /** As the receiver, store the objects of the pack streamed by the
+     *  other end, adding each commit to the commit graph and catalog and
+     *  to INCOMING_FILE as it arrives. */
+    void readPack() throws IOException {
+        CommitCatalog catalog = CommitCatalog.load();
+        CommitGraph graph = CommitGraph.load();
+        try (OutputStream incoming = new FileOutputStream(INCOMING_FILE,
+                                                          true)) {
+            for (int length = in.readInt(); length > 0;
+                 length = in.readInt()) {
+                String id = readRawId();
+                byte[] record = in.readNBytes(length);
+                if (record.length < length) {
+                    throw error("Transfer cut short.");
+                }
+                ObjectStore.importRecord(id, record);
+                objects += 1;
+                bytes += 4 + PackFile.ID_SIZE + length;
+                if (record[0] == ObjectStore.COMMIT
+                    && !graph.contains(id)) {
+                    Commit commit = Commit.load(id);
+                    catalog.append(id, commit, graph.append(id, commit));
+                    incoming.write(fromHex(id));
+                    incoming.flush();
+                }
+            }
+        }
+        bytes += 4;
+    }
+
+    /** Append a line recording a transfer to LOG_FILE and, if the
+     *  environment variable GITLET_STATS is set, print it on the standard
+     *  error.  The transfer was of the history of BRANCH of REMOTE, in the
+     *  direction given by COMMAND, and took NANOS nanoseconds. */
+    void record(String command, String remote, String branch, long nanos) {
+        String line = String.format("%s %s %s: %d objects, %d bytes, %d ms",
+                                    command, remote, branch, objects, bytes,
+                                    nanos / 1_000_000);
+        try (OutputStream log = new FileOutputStream(LOG_FILE, true)) {
+            log.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw error("Cannot write transfer log: %s", excp.getMessage());
+        }
+        if (System.getenv("GITLET_STATS") != null) {
+            System.err.println(line);
+        }
+    }
+
+    /** An action of one end of a transfer that may fail with an
+     *  IOException. */
+    interface Action {
+        /** Carry out the action on TRANSFER. */
+        void run(Transfer transfer) throws IOException;
+    }
+
+    /** Run ACTION on a transfer over the standard input and output, which
+     *  lead to the other end.  Errors are reported on the standard error,
+     *  so as not to be taken for part of the transfer. */
+    private static void serve(Action action) {
+        Transfer transfer =
+            new Transfer(new FileInputStream(FileDescriptor.in),
+                         new FileOutputStream(FileDescriptor.out));
+        try {
+            action.run(transfer);
+        } catch (GitletException | IOException excp) {
+            System.err.println(excp.getMessage());
+        }
+    }
+
+    /** Returns the commits offered first by sendHaves: the heads of the
+     *  branches and those in INCOMING_FILE, as found in GRAPH. */
+    private static Set<String> haves(CommitGraph graph) {
+        Set<String> result = new HashSet<>(RefStore.all().values());
+        if (INCOMING_FILE.isFile()) {
+            byte[] ids = readContents(INCOMING_FILE);
+            for (int i = 0; i + PackFile.ID_SIZE <= ids.length;
+                 i += PackFile.ID_SIZE) {
+                String id = toHex(ids, i);
+                if (graph.contains(id)) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Queue the parents of row K of GRAPH to be offered by sendHaves,
+     *  marking them as shared if SHARED, given the FLAGS of all rows, the
+     *  QUEUE of rows, and in PENDING[0] the number of queued rows not
+     *  known to be shared. */
+    private static void offerParents(CommitGraph graph, int k,
+                                     boolean shared, int[] flags,
+                                     PriorityQueue<Integer> queue,
+                                     int[] pending) {
+        for (int p : new int[] { graph.parent(k), graph.mergeParent(k) }) {
+            if (p != CommitGraph.NONE) {
+                offer(p, shared, flags, queue, pending);
+            }
+        }
+    }
+
+    /** Queue row K to be offered by sendHaves, marking it as shared if
+     *  SHARED, with FLAGS, QUEUE and PENDING as for offerParents. */
+    private static void offer(int k, boolean shared, int[] flags,
+                              PriorityQueue<Integer> queue, int[] pending) {
+        if ((flags[k] & DONE) != 0) {
+            return;
+        } else if ((flags[k] & QUEUED) == 0) {
+            flags[k] |= QUEUED;
+            queue.add(k);
+            pending[0] += 1;
+        }
+        if (shared && (flags[k] & COMMON) == 0) {
+            flags[k] |= COMMON;
+            pending[0] -= 1;
+        }
+    }
+
+    /** Write to the pack the chunks of the blob ID, if it is chunked,
+     *  other than those of the blob OLD, which the receiver has if it is
+     *  not null, and those in SENT.  A chunk stored as a delta against one
+     *  of those goes as such.  Add the ids of the chunks sent to SENT. */
+    private void sendChunks(String id, String old, Set<String> sent)
+        throws IOException {
+        List<String> chunks = ObjectStore.chunks(id);
+        if (chunks.isEmpty()) {
+            return;
+        }
+        Set<String> shared = old == null
+            ? Set.of() : new HashSet<>(ObjectStore.chunks(old));
+        for (String chunk : chunks) {
+            if (!shared.contains(chunk) && sent.add(chunk)) {
+                sendObject(chunk, ObjectStore.exportRecord(
+                    chunk,
+                    base -> shared.contains(base) || sent.contains(base)));
+            }
+        }
+    }
+
+    /** Write the entry for the object ID, whose record is RECORD, to the
+     *  pack. */
+    private void sendObject(String id, byte[] record) throws IOException {
+        if (record == null) {
+            throw error("Missing object %s.", id);
+        }
+        out.writeInt(record.length);
+        out.write(fromHex(id));
+        out.write(record);
+        objects += 1;
+        bytes += 4 + PackFile.ID_SIZE + record.length;
+    }
+
+    /** Returns a raw object id read from the other end, as a UID. */
+    private String readRawId() throws IOException {
+        byte[] raw = in.readNBytes(PackFile.ID_SIZE);
+        if (raw.length < PackFile.ID_SIZE) {
+            throw error("Transfer cut short.");
+        }
+        return toHex(raw, 0);
+    }
+}
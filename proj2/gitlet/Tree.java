@@ -0,0 +1,611 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** A directory of tracked files, stored as a Merkle tree.
+ *
+ *  A tree maps the names of the files directly in one directory to their
+ *  blob ids and the names of its subdirectories to the ids of their trees,
+ *  so the id of a tree is a hash of everything beneath it.  A commit holds
+ *  the id of the tree of the whole working directory; the tracked file
+ *  "a/b/c.txt" is entry "c.txt" of the tree that is entry "b" of the tree
+ *  that is entry "a" of that root.
+ *
+ *  The entries of a directory with at most MAX_LEAF of them are stored in
+ *  a single LEAF node:
+ *
+ *      1 byte      LEAF
+ *      varint      number of files, F
+ *      F entries   in increasing order of name, each the varint length of
+ *                  the UTF-8 name, the name, and the raw id of its blob
+ *      varint      number of subdirectories, D
+ *      D entries   likewise, with the raw id of each subdirectory's tree
+ *
+ *  A larger directory is a persistent hash array mapped trie of nodes.
+ *  Its entries are divided 32 ways by 5 bits of the 64-bit hash of their
+ *  names, and each nonempty part is itself a node one level down, divided
+ *  by the next 5 bits if it is still too large.  A SPLIT node is
+ *
+ *      1 byte      SPLIT
+ *      varint      number of entries beneath this node
+ *      4 bytes     bitmap of the parts that are not empty
+ *      20 bytes    raw id of the node for each such part, in order
+ *
+ *  The shape of a node depends only on the entries beneath it, so equal
+ *  directories have equal ids however they were made.  Updating a tree
+ *  rewrites only the nodes on the paths to the changed entries, so a
+ *  change to one file in a directory of 10,000 writes a few small nodes,
+ *  and every other node is shared, by id, with the tree it was updated
+ *  from, both on disk and, through CACHE, in memory.  For the same reason
+ *  two trees are compared by descending only into nodes whose ids
+ *  differ.  Only non-empty directories have trees, except that the root
+ *  of a commit tracking nothing is the empty tree.
+ */
+class Tree {
+
+    /** Format byte of a node listing its entries. */
+    static final int LEAF = 1;
+    /** Format byte of a node divided by hash. */
+    static final int SPLIT = 2;
+    /** Most entries a LEAF node may hold above the last level. */
+    static final int MAX_LEAF = 64;
+    /** Bits of the name hash that select a part at each level. */
+    private static final int BITS = 5;
+    /** Deepest level of a SPLIT node; nodes below it are leaves. */
+    private static final int MAX_LEVEL = 64 / BITS - 1;
+    /** Offset basis of the 64-bit FNV-1a hash. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    /** Prime of the 64-bit FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** Limit on the total estimated size of the trees in CACHE. */
+    private static final long CACHE_LIMIT = 8L << 20;
+    /** Nodes read or written during this command. */
+    static final ObjectCache<Tree> CACHE =
+        new ObjectCache<>(CACHE_LIMIT, Tree::estimatedSize);
+    /** The tree of an empty directory. */
+    private static final Tree EMPTY =
+        new Tree(new TreeMap<>(), new TreeMap<>());
+
+    /** The files of a LEAF, mapped to their blob ids, or null. */
+    private final TreeMap<String, String> files;
+    /** The subdirectories of a LEAF, mapped to their tree ids, or null. */
+    private final TreeMap<String, String> trees;
+    /** The number of entries beneath me. */
+    private final int count;
+    /** For a SPLIT node, the bitmap of its nonempty parts. */
+    private final int bitmap;
+    /** For a SPLIT node, the ids of its nonempty parts, in order. */
+    private final String[] parts;
+
+    /** A LEAF holding FILES and subdirectories TREES, which it takes
+     *  ownership of. */
+    private Tree(TreeMap<String, String> files,
+                 TreeMap<String, String> trees) {
+        this.files = files;
+        this.trees = trees;
+        this.count = files.size() + trees.size();
+        this.bitmap = 0;
+        this.parts = null;
+    }
+
+    /** A SPLIT node with COUNT entries beneath it, whose nonempty parts
+     *  are selected by BITMAP and have ids PARTS. */
+    private Tree(int count, int bitmap, String[] parts) {
+        this.files = null;
+        this.trees = null;
+        this.count = count;
+        this.bitmap = bitmap;
+        this.parts = parts;
+    }
+
+    /** An entry of a directory: a file or subdirectory and its id. */
+    private static class Entry {
+        /** True iff this is a subdirectory. */
+        private final boolean isTree;
+        /** The blob or tree id. */
+        private final String id;
+
+        /** An entry for a subdirectory, if ISTREE, or a file, with id
+         *  ID. */
+        Entry(boolean isTree, String id) {
+            this.isTree = isTree;
+            this.id = id;
+        }
+    }
+
+    /** Returns the node with id ID, or the empty tree if ID is null. */
+    static Tree load(String id) {
+        if (id == null) {
+            return EMPTY;
+        }
+        Tree result = CACHE.get(id);
+        if (result == null) {
+            byte[] contents = ObjectStore.read(id, ObjectStore.TREE);
+            if (contents == null) {
+                throw error("Missing tree %s.", id);
+            }
+            result = decode(contents);
+            CACHE.put(id, result);
+        }
+        return result;
+    }
+
+    /** Store the tree of the tracked files FILES, a map from path to blob
+     *  id, and return the id of its root. */
+    static String write(Map<String, String> files) {
+        return update(null, files, List.of());
+    }
+
+    /** Store the tree made from the tree whose id is ROOT (the empty tree
+     *  if ROOT is null) by adding or replacing the files ADDED, a map
+     *  from path to blob id, and removing the files REMOVED, and return
+     *  its id.  Only the nodes holding a changed entry, and those above
+     *  them, are written. */
+    static String update(String root, Map<String, String> added,
+                         Collection<String> removed) {
+        TreeMap<String, String> changes = new TreeMap<>();
+        for (String name : removed) {
+            changes.put(name, null);
+        }
+        changes.putAll(added);
+        String result = update(root, changes);
+        return result != null ? result : EMPTY.save();
+    }
+
+    /** Returns a map from the path of each file beneath the tree whose id
+     *  is ROOT to its blob id. */
+    static TreeMap<String, String> files(String root) {
+        TreeMap<String, String> result = new TreeMap<>();
+        addFiles(root, "", result);
+        return result;
+    }
+
+    /** Returns the blob id of the file whose path is PATH beneath the tree
+     *  whose id is ROOT, or null if there is none.  Only the nodes along
+     *  PATH are read. */
+    static String lookup(String root, String path) {
+        String dir = root;
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0;
+             slash = path.indexOf('/', start)) {
+            Entry entry = find(dir, 0, path.substring(start, slash));
+            if (entry == null || !entry.isTree) {
+                return null;
+            }
+            dir = entry.id;
+            start = slash + 1;
+        }
+        Entry entry = find(dir, 0, path.substring(start));
+        return entry == null || entry.isTree ? null : entry.id;
+    }
+
+    /** Compare the trees whose ids are FROM and TO (either may be null for
+     *  the empty tree).  Add to WRITES the path and blob of each file under
+     *  TO that is missing or different under FROM, and add to DELETES the
+     *  path of each file under FROM that is missing under TO.  Nodes whose
+     *  ids are equal are skipped unread. */
+    static void diff(String from, String to, Map<String, String> writes,
+                     List<String> deletes) {
+        diff(from, to, 0, "", writes, deletes);
+    }
+
+    /** Add to TREES the id of each node of the tree whose id is TO that is
+     *  not a node of the tree whose id is FROM (either may be null for the
+     *  empty tree), and to BLOBS the blob id of each file under TO that is
+     *  missing or different under FROM, mapped to the blob the file has
+     *  under FROM, or to null.  As for diff, nodes whose ids are equal are
+     *  skipped unread, so what is left out is all in the tree FROM. */
+    static void additions(String from, String to, Collection<String> trees,
+                          Map<String, String> blobs) {
+        if (to == null || to.equals(from)) {
+            return;
+        }
+        trees.add(to);
+        Tree a = load(from), b = load(to);
+        if (!a.isLeaf() && !b.isLeaf()) {
+            for (int d = 0; d < 1 << BITS; d += 1) {
+                additions(a.part(d), b.part(d), trees, blobs);
+            }
+            return;
+        }
+        addParts(to, trees);
+        TreeMap<String, String> aFiles = new TreeMap<>();
+        TreeMap<String, String> aTrees = new TreeMap<>();
+        TreeMap<String, String> bFiles = new TreeMap<>();
+        TreeMap<String, String> bTrees = new TreeMap<>();
+        entries(from, aFiles, aTrees);
+        entries(to, bFiles, bTrees);
+        for (Map.Entry<String, String> file : bFiles.entrySet()) {
+            String old = aFiles.get(file.getKey());
+            if (!file.getValue().equals(old)) {
+                blobs.putIfAbsent(file.getValue(), old);
+            }
+        }
+        for (Map.Entry<String, String> dir : bTrees.entrySet()) {
+            additions(aTrees.get(dir.getKey()), dir.getValue(), trees, blobs);
+        }
+    }
+
+    /** Add to BLOBS the blob ids of the files listed in the node with id
+     *  ID, and to TREES the ids of the nodes it refers to: its parts, if it
+     *  is a SPLIT node, or else the trees of its subdirectories. */
+    static void references(String id, Collection<String> blobs,
+                           Collection<String> trees) {
+        Tree node = load(id);
+        if (node.isLeaf()) {
+            blobs.addAll(node.files.values());
+            trees.addAll(node.trees.values());
+        } else {
+            trees.addAll(List.of(node.parts));
+        }
+    }
+
+    /** Returns true iff I am a LEAF. */
+    private boolean isLeaf() {
+        return parts == null;
+    }
+
+    /** Returns the id of my part selected by DIGIT, or null if it is
+     *  empty.  I must be a SPLIT node. */
+    private String part(int digit) {
+        if ((bitmap & (1 << digit)) == 0) {
+            return null;
+        }
+        return parts[Integer.bitCount(bitmap & ((1 << digit) - 1))];
+    }
+
+    /** Store this node, if it is not already present, and return its
+     *  id. */
+    private String save() {
+        String id = ObjectStore.write(ObjectStore.TREE, encode());
+        CACHE.put(id, this);
+        return id;
+    }
+
+    /** Returns the part of the node at LEVEL that holds the entry NAME. */
+    private static int digit(String name, int level) {
+        long hash = FNV_BASIS;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return (int) (hash >>> (BITS * level)) & ((1 << BITS) - 1);
+    }
+
+    /** Returns entry NAME of the directory whose node at LEVEL has id ID,
+     *  or null if there is none. */
+    private static Entry find(String id, int level, String name) {
+        Tree node = load(id);
+        while (!node.isLeaf()) {
+            String part = node.part(digit(name, level));
+            if (part == null) {
+                return null;
+            }
+            node = load(part);
+            level += 1;
+        }
+        if (node.files.containsKey(name)) {
+            return new Entry(false, node.files.get(name));
+        } else if (node.trees.containsKey(name)) {
+            return new Entry(true, node.trees.get(name));
+        }
+        return null;
+    }
+
+    /** Add the files and subdirectories beneath the node with id ID to
+     *  FILES and TREES. */
+    private static void entries(String id, Map<String, String> files,
+                                Map<String, String> trees) {
+        Tree node = load(id);
+        if (node.isLeaf()) {
+            files.putAll(node.files);
+            trees.putAll(node.trees);
+        } else {
+            for (String part : node.parts) {
+                entries(part, files, trees);
+            }
+        }
+    }
+
+    /** Returns the id of the tree made by applying CHANGES, a map from
+     *  path to blob id or to null for a removal, to the tree whose id is
+     *  ID, or null if that tree is empty. */
+    private static String update(String id, TreeMap<String, String> changes) {
+        if (changes.isEmpty()) {
+            return id;
+        }
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        TreeMap<String, TreeMap<String, String>> subdirs = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String name = change.getKey();
+            int slash = name.indexOf('/');
+            if (slash >= 0) {
+                subdirs.computeIfAbsent(name.substring(0, slash),
+                                        k -> new TreeMap<>())
+                    .put(name.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                entries.put(name, null);
+            } else {
+                entries.put(name, new Entry(false, change.getValue()));
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> subdir
+                 : subdirs.entrySet()) {
+            String name = subdir.getKey();
+            Entry old = find(id, 0, name);
+            String tree = update(old != null && old.isTree ? old.id : null,
+                                 subdir.getValue());
+            if (tree != null) {
+                entries.put(name, new Entry(true, tree));
+            } else if (old != null && old.isTree) {
+                entries.putIfAbsent(name, null);
+            }
+        }
+        return apply(id, 0, entries);
+    }
+
+    /** Returns the id of the node at LEVEL made by applying CHANGES, a map
+     *  from name to new entry or to null for a removal, to the node with id
+     *  ID, or null if the result is empty. */
+    private static String apply(String id, int level,
+                                TreeMap<String, Entry> changes) {
+        if (changes.isEmpty()) {
+            return id;
+        }
+        Tree node = load(id);
+        if (node.isLeaf()) {
+            TreeMap<String, String> files = new TreeMap<>(node.files);
+            TreeMap<String, String> trees = new TreeMap<>(node.trees);
+            for (Map.Entry<String, Entry> change : changes.entrySet()) {
+                String name = change.getKey();
+                Entry entry = change.getValue();
+                files.remove(name);
+                trees.remove(name);
+                if (entry != null) {
+                    (entry.isTree ? trees : files).put(name, entry.id);
+                }
+            }
+            return build(level, files, trees);
+        }
+        @SuppressWarnings("unchecked")
+        TreeMap<String, Entry>[] byDigit = new TreeMap[1 << BITS];
+        for (Map.Entry<String, Entry> change : changes.entrySet()) {
+            int d = digit(change.getKey(), level);
+            if (byDigit[d] == null) {
+                byDigit[d] = new TreeMap<>();
+            }
+            byDigit[d].put(change.getKey(), change.getValue());
+        }
+        String[] newParts = new String[1 << BITS];
+        int count = node.count;
+        for (int d = 0; d < newParts.length; d += 1) {
+            newParts[d] = node.part(d);
+            if (byDigit[d] != null) {
+                count -= load(newParts[d]).count;
+                newParts[d] = apply(newParts[d], level + 1, byDigit[d]);
+                count += load(newParts[d]).count;
+            }
+        }
+        if (count <= MAX_LEAF) {
+            TreeMap<String, String> files = new TreeMap<>();
+            TreeMap<String, String> trees = new TreeMap<>();
+            for (String part : newParts) {
+                if (part != null) {
+                    entries(part, files, trees);
+                }
+            }
+            return build(level, files, trees);
+        }
+        return split(count, newParts).save();
+    }
+
+    /** Store the node at LEVEL holding FILES and TREES, and return its id,
+     *  or null if it would be empty. */
+    private static String build(int level, TreeMap<String, String> files,
+                                TreeMap<String, String> trees) {
+        int count = files.size() + trees.size();
+        if (count == 0) {
+            return null;
+        } else if (count <= MAX_LEAF || level >= MAX_LEVEL) {
+            return new Tree(files, trees).save();
+        }
+        @SuppressWarnings("unchecked")
+        TreeMap<String, String>[] filesByDigit = new TreeMap[1 << BITS];
+        @SuppressWarnings("unchecked")
+        TreeMap<String, String>[] treesByDigit = new TreeMap[1 << BITS];
+        for (int d = 0; d < filesByDigit.length; d += 1) {
+            filesByDigit[d] = new TreeMap<>();
+            treesByDigit[d] = new TreeMap<>();
+        }
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            filesByDigit[digit(file.getKey(), level)]
+                .put(file.getKey(), file.getValue());
+        }
+        for (Map.Entry<String, String> dir : trees.entrySet()) {
+            treesByDigit[digit(dir.getKey(), level)]
+                .put(dir.getKey(), dir.getValue());
+        }
+        String[] newParts = new String[1 << BITS];
+        for (int d = 0; d < newParts.length; d += 1) {
+            newParts[d] = build(level + 1, filesByDigit[d], treesByDigit[d]);
+        }
+        return split(count, newParts).save();
+    }
+
+    /** Returns the SPLIT node with COUNT entries whose part for each digit
+     *  d has id PARTS[d], or none if that is null. */
+    private static Tree split(int count, String[] parts) {
+        int bitmap = 0, n = 0;
+        String[] dense = new String[parts.length];
+        for (int d = 0; d < parts.length; d += 1) {
+            if (parts[d] != null) {
+                bitmap |= 1 << d;
+                dense[n] = parts[d];
+                n += 1;
+            }
+        }
+        String[] result = new String[n];
+        System.arraycopy(dense, 0, result, 0, n);
+        return new Tree(count, bitmap, result);
+    }
+
+    /** Add to RESULT the path, starting with PREFIX, and blob id of each
+     *  file beneath the tree whose id is ID. */
+    private static void addFiles(String id, String prefix,
+                                 Map<String, String> result) {
+        TreeMap<String, String> files = new TreeMap<>();
+        TreeMap<String, String> trees = new TreeMap<>();
+        entries(id, files, trees);
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            result.put(prefix + file.getKey(), file.getValue());
+        }
+        for (Map.Entry<String, String> dir : trees.entrySet()) {
+            addFiles(dir.getValue(), prefix + dir.getKey() + "/", result);
+        }
+    }
+
+    /** Add to TREES the ids of the nodes beneath the node with id ID that
+     *  belong to the same directory: its parts, if it is a SPLIT node, and
+     *  theirs. */
+    private static void addParts(String id, Collection<String> trees) {
+        Tree node = load(id);
+        if (!node.isLeaf()) {
+            for (String part : node.parts) {
+                trees.add(part);
+                addParts(part, trees);
+            }
+        }
+    }
+
+    /** Compare the nodes at LEVEL whose ids are FROM and TO, which belong
+     *  to the directory at path PREFIX, as described for the public
+     *  diff. */
+    private static void diff(String from, String to, int level,
+                             String prefix, Map<String, String> writes,
+                             List<String> deletes) {
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        Tree a = load(from), b = load(to);
+        if (!a.isLeaf() && !b.isLeaf()) {
+            for (int d = 0; d < 1 << BITS; d += 1) {
+                diff(a.part(d), b.part(d), level + 1, prefix, writes,
+                     deletes);
+            }
+            return;
+        }
+        TreeMap<String, String> aFiles = new TreeMap<>();
+        TreeMap<String, String> aTrees = new TreeMap<>();
+        TreeMap<String, String> bFiles = new TreeMap<>();
+        TreeMap<String, String> bTrees = new TreeMap<>();
+        entries(from, aFiles, aTrees);
+        entries(to, bFiles, bTrees);
+        for (String name : aFiles.keySet()) {
+            if (!bFiles.containsKey(name)) {
+                deletes.add(prefix + name);
+            }
+        }
+        for (Map.Entry<String, String> file : bFiles.entrySet()) {
+            if (!file.getValue().equals(aFiles.get(file.getKey()))) {
+                writes.put(prefix + file.getKey(), file.getValue());
+            }
+        }
+        TreeSet<String> dirs = new TreeSet<>(aTrees.keySet());
+        dirs.addAll(bTrees.keySet());
+        for (String dir : dirs) {
+            diff(aTrees.get(dir), bTrees.get(dir), 0, prefix + dir + "/",
+                 writes, deletes);
+        }
+    }
+
+    /** Returns my stored form. */
+    private byte[] encode() {
+        ByteArrayOutputStream out;
+        if (isLeaf()) {
+            out = new ByteArrayOutputStream(8 + 40 * count);
+            out.write(LEAF);
+            for (TreeMap<String, String> entries : List.of(files, trees)) {
+                writeVarint(out, entries.size());
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeBytes(fromHex(entry.getValue()));
+                }
+            }
+        } else {
+            out = new ByteArrayOutputStream(16 + 20 * parts.length);
+            out.write(SPLIT);
+            writeVarint(out, count);
+            out.writeBytes(ByteBuffer.allocate(4).putInt(bitmap).array());
+            for (String part : parts) {
+                out.writeBytes(fromHex(part));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the node whose stored form is BYTES. */
+    private static Tree decode(byte[] bytes) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            int format = in.get();
+            if (format == LEAF) {
+                TreeMap<String, String> files = readEntries(in);
+                return new Tree(files, readEntries(in));
+            } else if (format != SPLIT) {
+                throw error("Unknown tree format.");
+            }
+            int count = (int) readVarint(in);
+            int bitmap = in.getInt();
+            String[] parts = new String[Integer.bitCount(bitmap)];
+            for (int k = 0; k < parts.length; k += 1) {
+                parts[k] = readId(in);
+            }
+            return new Tree(count, bitmap, parts);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | IllegalArgumentException excp) {
+            throw error("Corrupt tree.");
+        }
+    }
+
+    /** Read a count and that many (name, raw id) entries from IN, and
+     *  return them as a map. */
+    private static TreeMap<String, String> readEntries(ByteBuffer in) {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (long n = readVarint(in); n > 0; n -= 1) {
+            String name = readString(in);
+            result.put(name, readId(in));
+        }
+        return result;
+    }
+
+    /** Read a raw 20-byte id from IN and return it as a UID. */
+    private static String readId(ByteBuffer in) {
+        String result = toHex(in.array(), in.position());
+        in.position(in.position() + PackFile.ID_SIZE);
+        return result;
+    }
+
+    /** Returns a rough estimate of the memory I take, in bytes. */
+    private long estimatedSize() {
+        if (!isLeaf()) {
+            return 64 + 96L * parts.length;
+        }
+        long result = 64;
+        for (TreeMap<String, String> entries : List.of(files, trees)) {
+            for (String name : entries.keySet()) {
+                result += 160 + 2L * name.length();
+            }
+        }
+        return result;
+    }
+}
@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,13 +10,14 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -33,27 +35,77 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
+    /** Size of the buffers through which files are hashed. */
+    private static final int HASH_BUFFER_SIZE = 1 << 16;
+
+    /** Lower-case hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** A SHA-1 digester for each thread, reset before each use. */
+    private static final ThreadLocal<MessageDigest> DIGESTS =
+        ThreadLocal.withInitial(Utils::newDigester);
+
+    /** A direct buffer of HASH_BUFFER_SIZE bytes for each thread, used to
+     *  stream file contents into DIGESTS. */
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFERS =
+        ThreadLocal.withInitial(
+            () -> ByteBuffer.allocateDirect(HASH_BUFFER_SIZE));
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        MessageDigest md = digester();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        return toHex(md.digest(), 0);
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, which must be a
+     *  normal file.  This is the same as sha1(readContents(FILE)), but the
+     *  contents are streamed through a fixed-size buffer rather than read
+     *  into memory.  Throws IllegalArgumentException in case of problems. */
+    static String sha1(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        MessageDigest md = digester();
+        ByteBuffer buf = HASH_BUFFERS.get();
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            buf.clear();
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
             }
-            return result.toString();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return toHex(md.digest(), 0);
+    }
+
+    /** Returns this thread's SHA-1 digester, reset.  The sha1 methods
+     *  use it too, so it must not be held across calls to them. */
+    private static MessageDigest digester() {
+        MessageDigest md = DIGESTS.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns a new SHA-1 digester, for a hash computed a piece at a
+     *  time while other things are hashed. */
+    static MessageDigest newDigester() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
+            throw new IllegalArgumentException(
+                "System does not support SHA-1");
         }
     }
 
@@ -63,6 +115,37 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the UID_LENGTH-digit hexadecimal numeral for the raw
+     *  20-byte SHA-1 hash stored in BYTES starting at OFFSET. */
+    static String toHex(byte[] bytes, int offset) {
+        char[] result = new char[UID_LENGTH];
+        for (int i = 0; i < UID_LENGTH / 2; i += 1) {
+            int b = bytes[offset + i];
+            result[2 * i] = HEX_DIGITS[(b >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns the raw 20-byte SHA-1 hash denoted by the hexadecimal
+     *  numeral UID.  Throws IllegalArgumentException if UID is not a
+     *  complete UID. */
+    static byte[] fromHex(String uid) {
+        if (uid.length() != UID_LENGTH) {
+            throw new IllegalArgumentException("improper UID length");
+        }
+        byte[] result = new byte[UID_LENGTH / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(uid.charAt(2 * i), 16);
+            int lo = Character.digit(uid.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("improper UID digit");
+            }
+            result[i] = (byte) ((hi << 4) | lo);
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -220,8 +303,73 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
+    /* VARIABLE-LENGTH INTEGERS */
+
+    /** Write the non-negative VALUE to OUT in 7-bit groups, least
+     *  significant group first, with the high bit of each byte set iff
+     *  another byte follows. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Read and return a value written by writeVarint from IN. */
+    static long readVarint(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Write S to OUT as its varint UTF-8 length followed by its UTF-8
+     *  bytes. */
+    static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    /** Read and return a string written by writeString from IN. */
+    static String readString(ByteBuffer in) {
+        int len = (int) readVarint(in);
+        if (!in.hasArray()) {
+            byte[] bytes = new byte[len];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String result = new String(in.array(),
+                                   in.arrayOffset() + in.position(), len,
+                                   StandardCharsets.UTF_8);
+        in.position(in.position() + len);
+        return result;
+    }
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as
@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Utils.*;
+
+/** Scans of the working directory.
+ *
+ *  Listing the directory is a single sequential pass, but the per-file work
+ *  that follows it (a stat call for every entry, and reading and hashing
+ *  the files whose ids are not cached) is spread over a fork/join pool.
+ *  Most of that work waits on the file system rather than on a CPU, so the
+ *  pool has more threads than there are processors, up to MAX_IO_THREADS,
+ *  to keep enough requests in flight for a fast disk.  Results are always
+ *  gathered into name order, so output does not depend on scheduling.
+ */
+class WorkingTree {
+
+    /** Most I/O operations in flight at once. */
+    static final int MAX_IO_THREADS = 16;
+    /** Number of threads in the scan pool. */
+    static final int PARALLELISM =
+        Math.min(MAX_IO_THREADS,
+                 Math.max(2, 2 * Runtime.getRuntime().availableProcessors()));
+    /** Ranges with fewer than this many items are processed by one
+     *  thread. */
+    private static final int SEQUENTIAL_THRESHOLD = 64;
+
+    /** The pool used for scans, created on first use. */
+    private static ForkJoinPool pool;
+
+    /** Returns the plain files in the working directory and its
+     *  subdirectories, other than .gitlet, in order of path, with their
+     *  stat data.  Paths are relative to the working directory, with '/'
+     *  between components.  The tree is scanned a level at a time, with
+     *  the entries of each level statted in parallel; symbolic links to
+     *  directories are not followed. */
+    static TreeMap<String, BasicFileAttributes> files() {
+        TreeMap<String, BasicFileAttributes> result = new TreeMap<>();
+        List<String> dirs = new ArrayList<>(List.of(""));
+        while (!dirs.isEmpty()) {
+            List<String> names = new ArrayList<>();
+            for (String dir : dirs) {
+                list(dir, names);
+            }
+            BasicFileAttributes[] attrs = new BasicFileAttributes[names.size()];
+            boolean[] links = new boolean[names.size()];
+            forEach(names.size(), i -> {
+                Path path = join(CWD, names.get(i)).toPath();
+                try {
+                    attrs[i] = Files.readAttributes(path,
+                                                    BasicFileAttributes.class);
+                    links[i] = attrs[i].isDirectory()
+                        && Files.isSymbolicLink(path);
+                } catch (IOException excp) {
+                    attrs[i] = null;
+                }
+            });
+            dirs.clear();
+            for (int i = 0; i < attrs.length; i += 1) {
+                if (attrs[i] == null) {
+                    continue;
+                } else if (attrs[i].isRegularFile()) {
+                    result.put(names.get(i), attrs[i]);
+                } else if (attrs[i].isDirectory() && !links[i]) {
+                    dirs.add(names.get(i));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Add to NAMES the path of each entry of working directory DIR (the
+     *  working directory itself if DIR is empty), skipping .gitlet. */
+    private static void list(String dir, List<String> names) {
+        String prefix = dir.isEmpty() ? "" : dir + "/";
+        try (DirectoryStream<Path> entries =
+                 Files.newDirectoryStream(join(CWD, dir).toPath())) {
+            for (Path path : entries) {
+                String name = path.getFileName().toString();
+                if (!(dir.isEmpty() && name.equals(".gitlet"))) {
+                    names.add(prefix + name);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot read working directory: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Call ACTION on each of 0 .. N-1, in parallel on the scan pool, and
+     *  return when all calls have finished.  ACTION must be safe to call
+     *  from several threads at once on different arguments. */
+    static void forEach(int n, IntConsumer action) {
+        if (n < SEQUENTIAL_THRESHOLD) {
+            for (int i = 0; i < n; i += 1) {
+                action.accept(i);
+            }
+        } else {
+            pool().invoke(new RangeTask(0, n, action));
+        }
+    }
+
+    /** Returns the scan pool, creating it on first use. */
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(PARALLELISM);
+        }
+        return pool;
+    }
+
+    /** A task that applies an action to a range of indices, splitting
+     *  itself in half until the pieces are small. */
+    private static class RangeTask extends RecursiveAction {
+        /** Bounds of my range. */
+        private final int lo, hi;
+        /** The action applied to each index. */
+        private final IntConsumer action;
+
+        /** A task applying ACTION to each of LO .. HI-1. */
+        RangeTask(int lo, int hi, IntConsumer action) {
+            this.lo = lo;
+            this.hi = hi;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= SEQUENTIAL_THRESHOLD) {
+                for (int i = lo; i < hi; i += 1) {
+                    action.accept(i);
+                }
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new RangeTask(lo, mid, action),
+                          new RangeTask(mid, hi, action));
+            }
+        }
+    }
+}
@@ -1,9 +1,11 @@
 import sys, re
 from subprocess import \
-     check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
+     check_output, Popen, PIPE, STDOUT, DEVNULL, CalledProcessError, \
+     TimeoutExpired
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
+from os import chdir, environ, getcwd, mkdir, makedirs, remove, access, \
+     W_OK
 from shutil import copyfile, rmtree
 from math import log
 
@@ -24,6 +26,9 @@ Usage: python3 tester.py OPTIONS TEST.in ...
        --tolerance=N  Set the maximum allowed edit distance between program
                       output and expected output to N (default 3).
        --verbose      Print extra information about execution.
+       --daemon       Run the commands of each test directory through one
+                      `java gitlet.Main --daemon` process instead of one
+                      JVM per command.  Timeouts are not enforced.
 """
 
 USAGE = SHORT_USAGE + """\
@@ -93,6 +98,9 @@ GITLET_CLASS = "gitlet.Main"
 JVM_OPTIONS = "-agentlib:jdwp=transport=dt_socket,server=y,suspend=y,address=5005"
 
 DEBUG = False
+DAEMON = False
+END_OF_OUTPUT = "\0\n"
+daemons = {}
 DEBUG_MSG = \
     """You are in debug mode.
     In this mode, you will be shown each command from the test case.
@@ -152,11 +160,40 @@ def doDelete(name, dir):
 def doCopy(dest, src, dir):
     try:
         doDelete(dest, dir)
+        makedirs(dirname(join(dir, dest)), exist_ok=True)
         copyfile(join(src_dir, src), join(dir, dest))
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))
 
+def doDaemonCommand(cmnd, dir):
+    if dir not in daemons:
+        daemons[dir] = Popen("{} {} --daemon".format(JAVA_COMMAND,
+                                                    GITLET_CLASS),
+                             shell=True, cwd=dir, stdin=PIPE, stdout=PIPE,
+                             stderr=STDOUT, universal_newlines=True)
+    proc = daemons[dir]
+    proc.stdin.write(cmnd + "\n")
+    proc.stdin.flush()
+    out = []
+    while True:
+        line = proc.stdout.readline()
+        if line == END_OF_OUTPUT:
+            return "OK", "".join(out)
+        if line == "":
+            del daemons[dir]
+            return ("gitlet daemon exited with code {}"
+                    .format(proc.wait()), "".join(out))
+        out.append(line)
+
+def stopDaemons():
+    for proc in daemons.values():
+        proc.stdin.close()
+        proc.wait()
+    daemons.clear()
+
 def doExecute(cmnd, dir, timeout, line_num):
+    if DAEMON and not DEBUG:
+        return doDaemonCommand(cmnd, dir)
     here = getcwd()
     out = ""
     try:
@@ -385,6 +422,7 @@ def doTest(test):
             else:
                 raise ValueError("bad test line at {}".format(line_num))
     finally:
+        stopDaemons()
         if not keep:
             cleanTempDir(tmpdir)
 
@@ -400,7 +438,7 @@ if __name__ == "__main__":
         opts, files = \
             getopt(sys.argv[1:], '',
                    ['show=', 'keep', 'progdir=', 'verbose', 'src=',
-                    'tolerance=', 'debug'])
+                    'tolerance=', 'debug', 'daemon'])
         for opt, val in opts:
             if opt == '--show':
                 val = val.lower()
@@ -422,6 +460,8 @@ if __name__ == "__main__":
                 output_tolerance = int(val)
             elif opt == "--debug":
                 DEBUG = True
+            elif opt == "--daemon":
+                DAEMON = True
         if prog_dir is None:
             prog_dir = abspath(getcwd())
             k = 10